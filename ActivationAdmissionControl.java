@@ -0,0 +1,202 @@
+package com.kajeet.sentinel.activation.service.impl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.kajeet.sentinel.activation.metrics.ActivationMetrics;
+import com.kajeet.sentinel.exception.ServiceUnavailableException;
+import com.kajeet.sentinel.exception.TooManyRequestsException;
+
+/**
+ * Limits how many activation submissions run at once: globally, per corp and per master corp. Submissions
+ * that do not fit wait in a bounded queue. Whenever a permit is released, waiters are admitted in arrival
+ * order, but a waiter held back by its own corp's limit does not block waiters from other corps. A submission
+ * that finds the queue full, or is still waiting after the timeout, is rejected with 429 and Retry-After.
+ * A limit of zero or less disables that limit.
+ */
+@Component
+public class ActivationAdmissionControl {
+
+	private static final Logger log = LoggerFactory.getLogger(ActivationAdmissionControl.class);
+
+	private final boolean enabled;
+	private final int maxInFlight;
+	private final int maxPerCorp;
+	private final int maxPerMasterCorp;
+	private final int maxQueued;
+	private final long queueTimeoutMillis;
+	private final long retryAfterSeconds;
+	private final ActivationMetrics activationMetrics;
+
+	private final Set<Ticket> waiters = new LinkedHashSet<>();
+	private final Map<String, Integer> inFlightByCorp = new HashMap<>();
+	private final Map<String, Integer> inFlightByMasterCorp = new HashMap<>();
+	private int inFlight;
+
+	public ActivationAdmissionControl(@Value("${activation.admission.enabled:true}") boolean enabled,
+			@Value("${activation.admission.maxInFlight:32}") int maxInFlight,
+			@Value("${activation.admission.maxPerCorp:4}") int maxPerCorp,
+			@Value("${activation.admission.maxPerMasterCorp:8}") int maxPerMasterCorp,
+			@Value("${activation.admission.maxQueued:200}") int maxQueued,
+			@Value("${activation.admission.queueTimeoutMillis:10000}") long queueTimeoutMillis,
+			@Value("${activation.admission.retryAfterSeconds:5}") long retryAfterSeconds,
+			ActivationMetrics activationMetrics) {
+		this.enabled = enabled;
+		this.maxInFlight = maxInFlight;
+		this.maxPerCorp = maxPerCorp;
+		this.maxPerMasterCorp = maxPerMasterCorp;
+		this.maxQueued = maxQueued;
+		this.queueTimeoutMillis = queueTimeoutMillis;
+		this.retryAfterSeconds = retryAfterSeconds;
+		this.activationMetrics = activationMetrics;
+	}
+
+	/**
+	 * Waits for a permit for the given corp. Close the returned permit when the submission finishes.
+	 */
+	public Permit acquire(String corpId, String masterCorpId) {
+		if (!enabled) {
+			return Permit.NONE;
+		}
+		long started = System.nanoTime();
+		Ticket ticket = new Ticket(corpId, masterCorpId);
+		synchronized (this) {
+			if (fits(ticket)) {
+				admit(ticket);
+			} else {
+				if (waiters.size() >= maxQueued) {
+					throw reject(ActivationMetrics.ADMISSION_QUEUE_FULL, ticket, started);
+				}
+				waiters.add(ticket);
+				long deadline = started + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+				try {
+					while (!ticket.admitted) {
+						long remaining = deadline - System.nanoTime();
+						if (remaining <= 0) {
+							waiters.remove(ticket);
+							throw reject(ActivationMetrics.ADMISSION_TIMEOUT, ticket, started);
+						}
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					if (ticket.admitted) {
+						release(ticket);
+					} else {
+						waiters.remove(ticket);
+					}
+					throw new ServiceUnavailableException("Interrupted while waiting to submit the activation request");
+				}
+			}
+		}
+		activationMetrics.recordAdmission(ActivationMetrics.ADMISSION_ADMITTED, started);
+		return new Permit(this, ticket);
+	}
+
+	synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	synchronized int getQueued() {
+		return waiters.size();
+	}
+
+	private boolean fits(Ticket ticket) {
+		return below(inFlight, maxInFlight)
+				&& below(inFlightByCorp.getOrDefault(ticket.corpId, 0), maxPerCorp)
+				&& below(inFlightByMasterCorp.getOrDefault(ticket.masterCorpId, 0), maxPerMasterCorp);
+	}
+
+	private static boolean below(int current, int limit) {
+		return limit <= 0 || current < limit;
+	}
+
+	private void admit(Ticket ticket) {
+		inFlight++;
+		inFlightByCorp.merge(ticket.corpId, 1, Integer::sum);
+		inFlightByMasterCorp.merge(ticket.masterCorpId, 1, Integer::sum);
+		ticket.admitted = true;
+	}
+
+	private synchronized void release(Ticket ticket) {
+		inFlight--;
+		inFlightByCorp.computeIfPresent(ticket.corpId, (corpId, count) -> count > 1 ? count - 1 : null);
+		inFlightByMasterCorp.computeIfPresent(ticket.masterCorpId, (corpId, count) -> count > 1 ? count - 1 : null);
+		boolean admittedAny = false;
+		for (Iterator<Ticket> it = waiters.iterator(); it.hasNext() && below(inFlight, maxInFlight);) {
+			Ticket waiter = it.next();
+			if (fits(waiter)) {
+				it.remove();
+				admit(waiter);
+				admittedAny = true;
+			}
+		}
+		if (admittedAny) {
+			notifyAll();
+		}
+	}
+
+	private TooManyRequestsException reject(String outcome, Ticket ticket, long started) {
+		activationMetrics.recordAdmission(outcome, started);
+		log.warn("Rejecting activation submission for corpId: {} (master corp {}): {}, {} in flight, {} queued",
+				ticket.corpId, ticket.masterCorpId, outcome, inFlight, waiters.size());
+		RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+		if (requestAttributes instanceof ServletRequestAttributes
+				&& ((ServletRequestAttributes) requestAttributes).getResponse() != null) {
+			((ServletRequestAttributes) requestAttributes).getResponse().setHeader(HttpHeaders.RETRY_AFTER,
+					String.valueOf(retryAfterSeconds));
+		}
+		return new TooManyRequestsException("Too many activation requests in progress. Please try again later.",
+				retryAfterSeconds);
+	}
+
+	private static final class Ticket {
+
+		private final String corpId;
+		private final String masterCorpId;
+		private boolean admitted;
+
+		Ticket(String corpId, String masterCorpId) {
+			this.corpId = corpId;
+			this.masterCorpId = masterCorpId;
+		}
+	}
+
+	/**
+	 * An admitted submission. Closing it more than once has no effect.
+	 */
+	public static final class Permit implements AutoCloseable {
+
+		static final Permit NONE = new Permit(null, null);
+
+		private final ActivationAdmissionControl owner;
+		private final Ticket ticket;
+		private boolean closed;
+
+		private Permit(ActivationAdmissionControl owner, Ticket ticket) {
+			this.owner = owner;
+			this.ticket = ticket;
+		}
+
+		@Override
+		public void close() {
+			if (owner != null && !closed) {
+				closed = true;
+				owner.release(ticket);
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.kajeet.sentinel.activation.service.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.kajeet.sentinel.exception.ServiceUnavailableException;
+
+/**
+ * Runs the per-carrier procedure calls of a multi-carrier activation in parallel. The pool is small and
+ * bounded. Once it and its queue are full, the carrier's future fails with a 503 rather than running the call
+ * on the request thread, so a burst cannot push procedure calls past the pool and the admission limits.
+ */
+@Component
+public class ActivationCarrierDispatcher implements DisposableBean {
+
+	private final ThreadPoolExecutor executor;
+
+	public ActivationCarrierDispatcher(@Value("${activation.multiCarrier.dispatchThreads:8}") int dispatchThreads,
+			@Value("${activation.multiCarrier.queueCapacity:32}") int queueCapacity) {
+		AtomicInteger threadCount = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(dispatchThreads, dispatchThreads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+					Thread thread = new Thread(runnable, "activation-dispatch-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.AbortPolicy());
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	<T> CompletableFuture<T> dispatch(Supplier<T> submission) {
+		try {
+			return CompletableFuture.supplyAsync(submission, executor);
+		} catch (RejectedExecutionException e) {
+			CompletableFuture<T> rejected = new CompletableFuture<>();
+			rejected.completeExceptionally(new ServiceUnavailableException(
+					"Too many multi-carrier activations in progress. Please try again later."));
+			return rejected;
+		}
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdown();
+	}
+}
@@ -1,24 +1,44 @@
 package com.kajeet.sentinel.activation.dao.impl;
 
 import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import com.kajeet.sentinel.activation.model.CarrierBearerPath;
+import oracle.jdbc.OracleConnection;
+import org.apache.commons.lang3.Range;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.core.env.Environment;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
-import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
-import org.springframework.jdbc.core.simple.SimpleJdbcCall;
+import org.springframework.jdbc.core.support.AbstractSqlTypeValue;
 import org.springframework.stereotype.Component;
 
 import com.kajeet.sentinel.activation.dao.ActivationDao;
+import com.kajeet.sentinel.activation.dao.impl.ActivationSqlRegistry.Query;
+import com.kajeet.sentinel.activation.metrics.ActivationMetrics;
+import com.kajeet.sentinel.activation.model.ActivationDetailsDto;
+import com.kajeet.sentinel.activation.model.ActivationHistoryDelta;
+import com.kajeet.sentinel.activation.model.ActivationHistoryTable;
+import com.kajeet.sentinel.activation.model.ActivationHistoryWatermark;
 import com.kajeet.sentinel.activation.model.ActivationInventoryInfo;
 import com.kajeet.sentinel.activation.model.ActivationTransactionDTO;
 import com.kajeet.sentinel.activation.model.ActivationVerizonBusinessPlan;
@@ -32,45 +52,145 @@ import static com.kajeet.sentinel.activation.enumeration.Carriers.KPN;
 public class ActivationDaoImpl implements ActivationDao{
 	
 	private static final Logger log = LoggerFactory.getLogger(ActivationDaoImpl.class);
+	private static final Set<String> AVAILABLE_TIME_ZONES = new HashSet<>(Arrays.asList(TimeZone.getAvailableIDs()));
+	private static final String DEFAULT_TIME_ZONE = "US/Eastern";
+	private static final String STRING_ARRAY_TYPE = "SYS.ODCIVARCHAR2LIST";
+
+	/**
+	 * Submission routes, one per bulk_activate_* procedure. Also the carrier tag on procedure metrics.
+	 */
+	public static final String ROUTE_VERIZON = "Verizon";
+	public static final String ROUTE_VERIZON_PRIORITY = "Verizon_Priority";
+	public static final String ROUTE_ATT = "ATT";
+	public static final String ROUTE_ATT_FIRSTNET = "ATT_FirstNet";
+	public static final String ROUTE_ATT_FIRSTNET_EXTENDED_PRIMARY = "ATT_FirstNet_Extended_Primary";
+	public static final String ROUTE_TMO = "TMO";
+	public static final String ROUTE_TMO_CONTROL_CENTER = "TMO_ControlCenter";
+	public static final String ROUTE_USC = "US_Cellular";
+	public static final String ROUTE_KNE = "KJPLTE";
+	public static final String ROUTE_BELL_CANADA = "BELLCANADA";
+
 	private JdbcTemplate jdbcTemplate;
-	private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+	private ActivationReadRouting readRouting;
+	private ActivationMetrics metrics;
 	private String dbUser;
-	private SimpleJdbcCall bulkActivateVerizon;
-	private SimpleJdbcCall bulkActivateVerizonPriority;
-	private SimpleJdbcCall bulkActivateATT;
-	private SimpleJdbcCall bulkActivateATTFirstNet;
-	private SimpleJdbcCall bulkActivateATTFirstNetExtendedPrimary;
-	private SimpleJdbcCall bulkActivateTmo; //NetCracker
-	private SimpleJdbcCall bulkActivateTmoControlCenter;
-	private SimpleJdbcCall bulkActivateUSC;
-	private SimpleJdbcCall bulkActivateKajeetPrivateLTE;
-	private SimpleJdbcCall bulkActivateBellCanada;
+	private ActivationSqlRegistry sqlRegistry;
+	private boolean dedupeHistoryStrings;
+	private ActivationProcedureCall bulkActivateVerizon;
+	private ActivationProcedureCall bulkActivateVerizonPriority;
+	private ActivationProcedureCall bulkActivateATT;
+	private ActivationProcedureCall bulkActivateATTFirstNet;
+	private ActivationProcedureCall bulkActivateATTFirstNetExtendedPrimary;
+	private ActivationProcedureCall bulkActivateTmo; //NetCracker
+	private ActivationProcedureCall bulkActivateTmoControlCenter;
+	private ActivationProcedureCall bulkActivateUSC;
+	private ActivationProcedureCall bulkActivateKajeetPrivateLTE;
+	private ActivationProcedureCall bulkActivateBellCanada;
+	private ActivationSubmitBatcher submitBatcher;
+	private Map<String, ActivationProcedureCall> stagedProcedureCalls = new HashMap<>();
 
 	
-	public ActivationDaoImpl (JdbcTemplate jdbcTemplate, Constants constants) {
+	public ActivationDaoImpl (JdbcTemplate jdbcTemplate, Constants constants, Environment environment,
+			ActivationReadRouting readRouting, ActivationMetrics metrics) {
 		this.jdbcTemplate = jdbcTemplate;
-		this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate.getDataSource());
+		this.readRouting = readRouting;
+		this.metrics = metrics;
 	    this.dbUser = constants.getKjdbDbUser();
-	    this.bulkActivateVerizon = new SimpleJdbcCall(jdbcTemplate).withProcedureName("bulk_activate_verizon_kj4_json")
-                .withSchemaName(dbUser);
-	    this.bulkActivateVerizonPriority = new SimpleJdbcCall(jdbcTemplate).withProcedureName("bulk_activate_verizon_ts_3rdp")
-                .withSchemaName(dbUser);
-	    this.bulkActivateATT = new SimpleJdbcCall(jdbcTemplate).withProcedureName("bulk_activate_kjatt1_json")
-                .withSchemaName(dbUser);
-	    this.bulkActivateATTFirstNet = new SimpleJdbcCall(jdbcTemplate).withProcedureName("bulk_activate_attfn_3rdp")
-                .withSchemaName(dbUser);
-	    this.bulkActivateATTFirstNetExtendedPrimary = new SimpleJdbcCall(jdbcTemplate).withProcedureName("bulk_activate_attfne_3rdp")
-                .withSchemaName(dbUser);
-	    this.bulkActivateTmo = new SimpleJdbcCall(jdbcTemplate).withProcedureName("bulk_activate_tmo_kj1_json")
-                .withSchemaName(dbUser);
-	    this.bulkActivateUSC = new SimpleJdbcCall(jdbcTemplate).withProcedureName("bulk_activate_usc_json")
-                .withSchemaName(dbUser);
-	    this.bulkActivateKajeetPrivateLTE = new SimpleJdbcCall(jdbcTemplate).withProcedureName("bulk_activate_kpw_json")
-                .withSchemaName(dbUser);
-		this.bulkActivateBellCanada = new SimpleJdbcCall(jdbcTemplate).withProcedureName("bulk_activate_bell_json")
-										.withSchemaName(dbUser);
-		 this.bulkActivateTmoControlCenter = new SimpleJdbcCall(jdbcTemplate).withProcedureName("bulk_activate_multi_carrier1_json")
-	                .withSchemaName(dbUser);
+	    this.sqlRegistry = new ActivationSqlRegistry(dbUser);
+	    this.dedupeHistoryStrings = environment.getProperty("activation.history.dedupeStrings", Boolean.class, Boolean.TRUE);
+	    this.bulkActivateVerizon = createProcedureCall("bulk_activate_verizon_kj4_json", ROUTE_VERIZON, environment);
+	    this.bulkActivateVerizonPriority = createProcedureCall("bulk_activate_verizon_ts_3rdp", ROUTE_VERIZON_PRIORITY, environment);
+	    this.bulkActivateATT = createProcedureCall("bulk_activate_kjatt1_json", ROUTE_ATT, environment);
+	    this.bulkActivateATTFirstNet = createProcedureCall("bulk_activate_attfn_3rdp", ROUTE_ATT_FIRSTNET, environment);
+	    this.bulkActivateATTFirstNetExtendedPrimary = createProcedureCall("bulk_activate_attfne_3rdp", ROUTE_ATT_FIRSTNET_EXTENDED_PRIMARY, environment);
+	    this.bulkActivateTmo = createProcedureCall("bulk_activate_tmo_kj1_json", ROUTE_TMO, environment);
+	    this.bulkActivateUSC = createProcedureCall("bulk_activate_usc_json", ROUTE_USC, environment);
+	    this.bulkActivateKajeetPrivateLTE = createProcedureCall("bulk_activate_kpw_json", ROUTE_KNE, environment);
+		this.bulkActivateBellCanada = createProcedureCall("bulk_activate_bell_json", ROUTE_BELL_CANADA, environment);
+		 this.bulkActivateTmoControlCenter = createProcedureCall("bulk_activate_multi_carrier1_json", ROUTE_TMO_CONTROL_CENTER, environment);
+		this.submitBatcher = new ActivationSubmitBatcher(
+				environment.getProperty("activation.batching.enabled", Boolean.class, Boolean.FALSE),
+				environment.getProperty("activation.batching.windowMillis", Long.class, 5L),
+				environment.getProperty("activation.batching.maxRequestLines", Integer.class, 5),
+				environment.getProperty("activation.batching.maxBatchLines", Integer.class, 200));
+	}
+
+	/**
+	 * Each procedure gets its own statement timeout and, when maxConcurrent is set, its own permit pool.
+	 * Limits are read from activation.procedure.&lt;procedure_name&gt;.* and fall back to
+	 * activation.procedure.*. Concurrency is unlimited by default; set maxConcurrent from measured carrier
+	 * throughput, and callers over the limit wait up to acquireTimeoutMillis before getting a 503.
+	 */
+	private ActivationProcedureCall createProcedureCall(String procedureName, String carrier, Environment environment) {
+		String stagedProcedureName = environment.getProperty("activation.procedure." + procedureName + ".stagedProcedure");
+		if (stagedProcedureName != null) {
+			log.info("Activations for {} are submitted through {} with staged lines", carrier, stagedProcedureName);
+			stagedProcedureCalls.put(carrier, createProcedureCall(stagedProcedureName, carrier, environment));
+		}
+		int maxConcurrent = getProcedureProperty(environment, procedureName, "maxConcurrent", 0);
+		int queryTimeoutSeconds = getProcedureProperty(environment, procedureName, "queryTimeoutSeconds", 120);
+		int acquireTimeoutMillis = getProcedureProperty(environment, procedureName, "acquireTimeoutMillis", 30000);
+		if (maxConcurrent > 0) {
+			log.info("Procedure {} limited to {} concurrent calls ({} ms permit wait) with a {}s timeout", procedureName,
+					maxConcurrent, acquireTimeoutMillis, queryTimeoutSeconds);
+		} else {
+			log.info("Procedure {} unlimited with a {}s timeout", procedureName, queryTimeoutSeconds);
+		}
+		return new ActivationProcedureCall(jdbcTemplate.getDataSource(), dbUser, procedureName, maxConcurrent,
+				queryTimeoutSeconds, acquireTimeoutMillis, metrics.procedure(carrier, procedureName));
+	}
+
+	private int getProcedureProperty(Environment environment, String procedureName, String property, int defaultValue) {
+		Integer globalValue = environment.getProperty("activation.procedure." + property, Integer.class, defaultValue);
+		return environment.getProperty("activation.procedure." + procedureName + "." + property, Integer.class, globalValue);
+	}
+
+	public long getSqlRegistryLookups() {
+		return sqlRegistry.getLookups();
+	}
+
+	public long getSqlSortFallbacks() {
+		return sqlRegistry.getSortFallbacks();
+	}
+
+	/**
+	 * Fetches procedure metadata for every bulk_activate_* call and exercises the reference-data queries so the
+	 * first activation per carrier after a deploy does not pay for it. Each failure is logged at WARN, and
+	 * false is returned if anything could not be warmed.
+	 */
+	@Override
+	public boolean warmUp() {
+		List<ActivationProcedureCall> procedureCalls = new ArrayList<>(Arrays.asList(bulkActivateVerizon, bulkActivateVerizonPriority,
+				bulkActivateATT, bulkActivateATTFirstNet, bulkActivateATTFirstNetExtendedPrimary, bulkActivateTmo,
+				bulkActivateTmoControlCenter, bulkActivateUSC, bulkActivateKajeetPrivateLTE, bulkActivateBellCanada));
+		procedureCalls.addAll(stagedProcedureCalls.values());
+		boolean complete = true;
+		for (ActivationProcedureCall procedureCall : procedureCalls) {
+			try {
+				procedureCall.getSimpleJdbcCall().compile();
+			} catch (Exception e) {
+				log.warn("Could not compile procedure call {} during warm-up", procedureCall.getProcedureName(), e);
+				complete = false;
+			}
+		}
+		// the public lookups swallow errors, so query directly to see failures
+		complete &= warmUpQuery(Query.BUSINESS_INTERNET_PLANS, () -> readRouting.forRead(null)
+				.query(sqlRegistry.get(Query.BUSINESS_INTERNET_PLANS), ActivationRowMappers.BUSINESS_INTERNET_PLAN));
+		complete &= warmUpQuery(Query.KNE_CARRIER_LIST, () -> readRouting.forRead(null).getJdbcOperations()
+				.queryForList(sqlRegistry.get(Query.KNE_CARRIER_LIST), String.class));
+		complete &= warmUpQuery(Query.CARRIER_LIST_FIRST_RESPONDER, () -> readRouting.forRead(null).getJdbcOperations()
+				.queryForList(sqlRegistry.getFirstResponderCarrierList(Boolean.TRUE), String.class));
+		return complete;
+	}
+
+	private static boolean warmUpQuery(Query query, Runnable warmUp) {
+		try {
+			warmUp.run();
+			return true;
+		} catch (Exception e) {
+			log.warn("Activation query {} failed during warm-up", query, e);
+			return false;
+		}
 	}
 
 	@Override
@@ -81,10 +201,9 @@ public class ActivationDaoImpl implements ActivationDao{
 		parameters.addValue("businessType", businessType.toUpperCase());
 
 		try {
-			String sql = "select SKU,PLAN_ID from self_activation_inventory_combined where carrier=:carrier AND corp_business_type=:businessType";
+			String sql = sqlRegistry.get(Query.INVENTORY_BY_CARRIER);
 			
-			return namedParameterJdbcTemplate.queryForObject(sql, parameters,
-					new BeanPropertyRowMapper<>(ActivationInventoryInfo.class));
+			return timedQuery(Query.INVENTORY_BY_CARRIER, () -> readRouting.forRead(null).queryForObject(sql, parameters, ActivationRowMappers.INVENTORY));
 
 		} catch (Exception e) {
 			log.error("Could not get activation inventory info for carrier: {}.  Exception: {}", carrier, e);
@@ -113,10 +232,9 @@ public class ActivationDaoImpl implements ActivationDao{
 		} else {
 
 			try {
-				String sql = "select SKU,PLAN_ID from self_activation_inventory_combined where carrier = :carrier and corp_business_type = 'KPW'";
+				String sql = sqlRegistry.get(Query.INVENTORY_PLTE);
 
-				return namedParameterJdbcTemplate.queryForObject(sql, parameters,
-						new BeanPropertyRowMapper<>(ActivationInventoryInfo.class));
+				return timedQuery(Query.INVENTORY_PLTE, () -> readRouting.forRead(null).queryForObject(sql, parameters, ActivationRowMappers.INVENTORY));
 
 			} catch (Exception e) {
 				log.error("Could not get PLTE activation inventory info for carrier: {}.  Exception: ", carrier, e);
@@ -132,15 +250,9 @@ public class ActivationDaoImpl implements ActivationDao{
 		parameters.addValue("carrier", carrier);
 		
 		try {
-			String sql = "select SKU,\n"
-					+ "		PLAN_ID,\n"
-					+ "		EAST_IP_POOL,\n"
-					+ "		WEST_IP_POOL,\n"
-					+ "		EAST_COMMUNICATION_PLAN,\n"
-					+ "		WEST_COMMUNICATION_PLAN,\n"
-					+ "		SUB_TYPE from SELF_ACTIVATION_INVENTORY_3RD_PARTY where carrier = :carrier ";
+			String sql = sqlRegistry.get(Query.INVENTORY_3RD_PARTY);
 			
-			return namedParameterJdbcTemplate.queryForObject(sql, parameters, new BeanPropertyRowMapper<>(ActivationInventoryInfo.class));
+			return timedQuery(Query.INVENTORY_3RD_PARTY, () -> readRouting.forRead(null).queryForObject(sql, parameters, ActivationRowMappers.INVENTORY_3RD_PARTY));
 
 		} catch (Exception e) {
 			log.error("Could not third party activation inventory info for carrier: {}.  Exception: {}", carrier, e);
@@ -152,11 +264,7 @@ public class ActivationDaoImpl implements ActivationDao{
 	public Long submitVerizonActivationRequest(String activationJson, String corpId, String logUserId,
 			String catalystUserId) {
 
-		SqlParameterSource params = setActivationInParams(activationJson, corpId, logUserId, catalystUserId);
-
-		Map<String, Object> output = this.bulkActivateVerizon.execute(params);
-
-		return parseActivationResponse(corpId, output);
+		return submitActivation(this.bulkActivateVerizon, activationJson, corpId, logUserId, catalystUserId);
 		
 	}
 
@@ -164,11 +272,7 @@ public class ActivationDaoImpl implements ActivationDao{
 	public Long submitVerizonPriorityActivationRequest(String activationJson, String corpId, String logUserId,
 			String catalystUserId) {
 
-		SqlParameterSource params = setActivationInParams(activationJson, corpId, logUserId, catalystUserId);
-
-		Map<String, Object> output = this.bulkActivateVerizonPriority.execute(params);
-
-		return parseActivationResponse(corpId, output);
+		return submitActivation(this.bulkActivateVerizonPriority, activationJson, corpId, logUserId, catalystUserId);
 		
 	}
 
@@ -176,11 +280,7 @@ public class ActivationDaoImpl implements ActivationDao{
 	public Long submitTMOActivationRequest(String activationJson, String corpId, String logUserId,
 			String catalystUserId) {
 
-		SqlParameterSource params = setActivationInParams(activationJson, corpId, logUserId, catalystUserId);
-
-		Map<String, Object> output = this.bulkActivateTmo.execute(params);
-
-		return parseActivationResponse(corpId, output);
+		return submitActivation(this.bulkActivateTmo, activationJson, corpId, logUserId, catalystUserId);
 		
 	}
 	
@@ -190,11 +290,7 @@ public class ActivationDaoImpl implements ActivationDao{
 	public Long submitTMOControlCenterActivationRequest(String activationJson, String corpId, String logUserId,
 			String catalystUserId) {
 
-		SqlParameterSource params = setActivationInParams(activationJson, corpId, logUserId, catalystUserId);
-
-		Map<String, Object> output = this.bulkActivateTmoControlCenter.execute(params);
-
-		return parseActivationResponse(corpId, output);
+		return submitActivation(this.bulkActivateTmoControlCenter, activationJson, corpId, logUserId, catalystUserId);
 		
 	}
 	
@@ -203,11 +299,7 @@ public class ActivationDaoImpl implements ActivationDao{
 	public Long submitATTActivationRequest(String activationJson, String corpId, String logUserId,
 			String catalystUserId) {
 
-		SqlParameterSource params = setActivationInParams(activationJson, corpId, logUserId, catalystUserId);
-
-		Map<String, Object> output = this.bulkActivateATT.execute(params);
-
-		return parseActivationResponse(corpId, output);
+		return submitActivation(this.bulkActivateATT, activationJson, corpId, logUserId, catalystUserId);
 		
 	}
 
@@ -215,11 +307,7 @@ public class ActivationDaoImpl implements ActivationDao{
 	public Long submitAttFirstNetActivationRequest(String activationJson, String corpId, String logUserId,
 			String catalystUserId) {
 
-		SqlParameterSource params = setActivationInParams(activationJson, corpId, logUserId, catalystUserId);
-
-		Map<String, Object> output = this.bulkActivateATTFirstNet.execute(params);
-
-		return parseActivationResponse(corpId, output);
+		return submitActivation(this.bulkActivateATTFirstNet, activationJson, corpId, logUserId, catalystUserId);
 		
 	}
 
@@ -227,11 +315,7 @@ public class ActivationDaoImpl implements ActivationDao{
 	public Long submitAttFirstNetExtendedPrimaryActivationRequest(String activationJson, String corpId,
 			String logUserId, String catalystUserId) {
 
-		SqlParameterSource params = setActivationInParams(activationJson, corpId, logUserId, catalystUserId);
-
-		Map<String, Object> output = this.bulkActivateATTFirstNetExtendedPrimary.execute(params);
-
-		return parseActivationResponse(corpId, output);
+		return submitActivation(this.bulkActivateATTFirstNetExtendedPrimary, activationJson, corpId, logUserId, catalystUserId);
 		
 	}
 
@@ -239,11 +323,7 @@ public class ActivationDaoImpl implements ActivationDao{
 	public Long submitUSCActivationRequest(String activationJson, String corpId, String logUserId,
 			String catalystUserId) {
 
-		SqlParameterSource params = setActivationInParams(activationJson, corpId, logUserId, catalystUserId);
-
-		Map<String, Object> output = this.bulkActivateUSC.execute(params);
-
-		return parseActivationResponse(corpId, output);
+		return submitActivation(this.bulkActivateUSC, activationJson, corpId, logUserId, catalystUserId);
 		
 	}
 
@@ -251,11 +331,7 @@ public class ActivationDaoImpl implements ActivationDao{
 	public Long submitKNEActivationRequest(String activationJson, String corpId, String logUserId,
 			String catalystUserId) {
 
-		SqlParameterSource params = setActivationInParams(activationJson, corpId, logUserId, catalystUserId);
-
-		Map<String, Object> output = this.bulkActivateKajeetPrivateLTE.execute(params);
-
-		return parseActivationResponse(corpId, output);
+		return submitActivation(this.bulkActivateKajeetPrivateLTE, activationJson, corpId, logUserId, catalystUserId);
 		
 	}
 
@@ -263,14 +339,58 @@ public class ActivationDaoImpl implements ActivationDao{
 	public Long submitBellCanadaActivationRequest(String activationJson, String corpId, String logUserId,
 									String catalystUserId) {
 
-		SqlParameterSource params = setActivationInParams(activationJson, corpId, logUserId, catalystUserId);
+		return submitActivation(this.bulkActivateBellCanada, activationJson, corpId, logUserId, catalystUserId);
 
-		Map<String, Object> output = this.bulkActivateBellCanada.execute(params);
+	}
+	
+	/**
+	 * Calls the procedure directly, or through the micro-batcher when activation.batching.enabled is set.
+	 */
+	private long submitActivation(ActivationProcedureCall procedureCall, String activationJson, String corpId,
+			String logUserId, String catalystUserId) {
+		return submitBatcher.submit(procedureCall.getProcedureName(), activationJson, corpId, logUserId, catalystUserId,
+				json -> parseActivationResponse(corpId,
+						procedureCall.execute(setActivationInParams(json, corpId, logUserId, catalystUserId))));
+	}
 
-		return parseActivationResponse(corpId, output);
+	@Override
+	public boolean isStagedSubmission(String route) {
+		return stagedProcedureCalls.containsKey(route);
+	}
 
+	/**
+	 * Writes the lines to the staging table with a typed JDBC batch and calls the route's staged procedure
+	 * with the staging set id instead of a JSON document. The staged rows are deleted once the procedure
+	 * returns, whatever the outcome, so the procedure has to consume them within the call (see
+	 * {@link ActivationLineStaging}).
+	 */
+	@Override
+	public Long submitStagedActivationRequest(String route, List<ActivationDetailsDto> activationLines, String corpId,
+			String logUserId, String catalystUserId) {
+		ActivationProcedureCall procedureCall = stagedProcedureCalls.get(route);
+		if (procedureCall == null) {
+			throw new IllegalArgumentException("No staged procedure configured for " + route);
+		}
+		Long stagingSetId = timedQuery(Query.STAGING_SET_ID,
+				() -> jdbcTemplate.queryForObject(sqlRegistry.get(Query.STAGING_SET_ID), Long.class));
+		try {
+			timedQuery(Query.STAGE_ACTIVATION_LINE, () -> jdbcTemplate.batchUpdate(sqlRegistry.get(Query.STAGE_ACTIVATION_LINE),
+					ActivationLineStaging.toBatchArgs(stagingSetId, activationLines), ActivationLineStaging.getArgTypes()));
+			SqlParameterSource params = new MapSqlParameterSource().addValue("p_staging_set_id", stagingSetId)
+					.addValue("p_corp_id", corpId).addValue("p_log_user_id", logUserId)
+					.addValue("p_catalyst_user_id", catalystUserId);
+			return parseActivationResponse(corpId, procedureCall.execute(params));
+		} finally {
+			// the staged procedure has returned and no longer reads the set
+			try {
+				timedQuery(Query.DELETE_STAGED_LINES,
+						() -> jdbcTemplate.update(sqlRegistry.get(Query.DELETE_STAGED_LINES), stagingSetId));
+			} catch (RuntimeException e) {
+				log.warn("Could not delete staged activation lines for staging set {}", stagingSetId, e);
+			}
+		}
 	}
-	
+
 	private SqlParameterSource setActivationInParams(String activationJson, String corpId, String logUserId,
 			String catalystUserId) {
 		SqlParameterSource params = new MapSqlParameterSource().addValue("p_json", activationJson)
@@ -280,7 +400,7 @@ public class ActivationDaoImpl implements ActivationDao{
 	}
 	
 	private long parseActivationResponse(String corpId, Map<String, Object> output) {
-		Integer resultCode = ((BigDecimal) output.get(CatalystResult.P_RESULT_CODE)).intValue();
+		int resultCode = ActivationProcedureCall.resultCode(output);
 		long transactionId = 0;
 		if (resultCode != 0) {
 			log.error("Error submitting activation request for Corp: {} .Error code: {} .Catalyst Error Description: {}",
@@ -297,9 +417,9 @@ public class ActivationDaoImpl implements ActivationDao{
 	public List<String> getKNECarrierListForActivation() {
 		
 		try {
-			String sql = "select distinct(carrier) from SELF_ACTIVATION_INVENTORY_COMBINED WHERE corp_business_type = 'KPW' order by CARRIER";
+			String sql = sqlRegistry.get(Query.KNE_CARRIER_LIST);
 
-			return jdbcTemplate.queryForList(sql, String.class);
+			return timedQuery(Query.KNE_CARRIER_LIST, () -> readRouting.forRead(null).getJdbcOperations().queryForList(sql, String.class));
 
 		} catch (Exception e) {
 			log.error("Could not get carrier list info for KNE.  Exception: {}", e);
@@ -313,18 +433,9 @@ public class ActivationDaoImpl implements ActivationDao{
 		MapSqlParameterSource parameters = new MapSqlParameterSource();
 		parameters.addValue("businessType", businessType.toUpperCase());
 		try {
-			String sql = "select distinct(carrier) from self_activation_inventory_combined \n where corp_business_type = :businessType ";
-					
-					if(!isVerizonBI) {
-						sql += "AND CARRIER != 'Verizon BI'\n";
-					}
-					if ( isEsimEnabled) {
-						sql += "AND HAS_ESIM_EXPRESS_ENABLED = 'Y'\n";
-					}
-					
-					sql += " order by CARRIER";
-
-			return namedParameterJdbcTemplate.queryForList(sql, parameters, String.class);
+			String sql = sqlRegistry.getCarrierList(isVerizonBI, isEsimEnabled);
+
+			return timedQuery(Query.CARRIER_LIST, () -> readRouting.forRead(null).queryForList(sql, parameters, String.class));
 
 		} catch (Exception e) {
 			log.error("Could not get carrier list. Exception: {}", e);
@@ -337,16 +448,10 @@ public class ActivationDaoImpl implements ActivationDao{
 	public List<String> getCarrierListForActivationFirstResponder(Boolean isVerizonBI) {
 		
 		try {
-			String sql = "select distinct(carrier) from SELF_ACTIVATION_INVENTORY_3RD_PARTY \n";
-					
-					if(!isVerizonBI) {
-						sql += "where NOT CARRIER = 'Verizon BI'\n";
-					}
-					
-					sql += "order by CARRIER";
+			String sql = sqlRegistry.getFirstResponderCarrierList(isVerizonBI);
 
-			return jdbcTemplate.queryForList(sql,
-					String.class);
+			return timedQuery(Query.CARRIER_LIST_FIRST_RESPONDER, () -> readRouting.forRead(null).getJdbcOperations()
+					.queryForList(sql, String.class));
 
 		} catch (Exception e) {
 			log.error("Could not get carrier list for First Responder.  Exception: {}", e);
@@ -362,29 +467,13 @@ public class ActivationDaoImpl implements ActivationDao{
 		
 		MapSqlParameterSource parameters = new MapSqlParameterSource();
 		parameters.addValue("corpId", corpId);
-		validateUserTimeZone(userTimezone);
-		userTimezone = "'" + userTimezone + "'"; // move quotes to the query to spare some RAM?
+		parameters.addValue("userTimezone", validateUserTimeZone(userTimezone));
 		
 		try {
-			String sql = "SELECT  set_transaction_id, line_count, completed_count, failed_count, pending_count, derived_status, \n"
-					+ "TO_CHAR(FROM_TZ(cast(DATE_ENTERED as timestamp), substr(entered_timestamp, -6)) AT TIME ZONE \n"
-					+ userTimezone
-					+ ",'MM/dd/yyyy HH:MI:SS AM') transaction_timestamp FROM " + dbUser + ".kj4_activation_set \n"
-					+ "WHERE corp_id IN (SELECT CORP_ID FROM " + dbUser + ".KJ4_CORP_VIEW START WITH CORP_ID = :corpId \n"
-					+ "CONNECT BY PRIOR CORP_ID=PARENT_CORP_ID) order by entered_timestamp " + sortDir;
+			String sql = sqlRegistry.get(Query.TRANSACTION_HISTORY, sortDir);
 			
-			return namedParameterJdbcTemplate.query(sql, parameters, (resultSet, i) -> {
-				ActivationTransactionDTO activationTransactionDTO = new ActivationTransactionDTO();
-				activationTransactionDTO.setTransactionId(resultSet.getString("set_transaction_id"));
-				activationTransactionDTO.setStatus(resultSet.getString("derived_status"));
-				activationTransactionDTO.setTransactionStartTimestamp(resultSet.getString("transaction_timestamp"));
-				activationTransactionDTO.setTotalLines(resultSet.getInt("line_count"));
-				activationTransactionDTO.setSuccessLines(resultSet.getInt("completed_count"));
-				activationTransactionDTO.setFailedLines(resultSet.getInt("failed_count"));
-				activationTransactionDTO.setPendingLines(resultSet.getInt("pending_count"));
-				return activationTransactionDTO;
-				
-			});
+			return timedQuery(Query.TRANSACTION_HISTORY, () -> readRouting.forRead(corpId).query(sql, parameters,
+					ActivationRowMappers.TRANSACTION_SUMMARY));
 		} catch (Exception e) {
 			log.error("Could not get activation transaction history for corp: {}.  Exception: {}", corpId, e);
 			return Collections.emptyList();
@@ -398,51 +487,15 @@ public class ActivationDaoImpl implements ActivationDao{
 		
 		MapSqlParameterSource parameters = new MapSqlParameterSource();
 		parameters.addValue("corpId", corpId);
-		validateUserTimeZone(userTimezone);
-		userTimezone = "'" + userTimezone + "'"; // move quotes to the query to spare some RAM?
+		parameters.addValue("userTimezone", validateUserTimeZone(userTimezone));
 		
 		//query to get entire activation history with individual line level activation details for export only
 		
 		try {
-			String sql = "SELECT asv.set_transaction_id, asv.line_count, asv.completed_count, asv.failed_count, asv.derived_status as transaction_status, \n"
-					+ " TO_CHAR(FROM_TZ(cast(asv.DATE_ENTERED as timestamp), substr(asv.entered_timestamp, -6)) AT TIME ZONE \n"
-					+ userTimezone
-					+ ", 'MM/dd/yyyy HH:MI:SS AM') transaction_timestamp, \n"
-					+ " asd.carrier, asd.device_group, cv.corp_description, asd.filter_group, asd.service_zip_code, \n"
-					+ "asd.imei, asd.iccid, asd.mdn, nvl(kjserv5.nickname,'N/A') as nickname, asd.ip, asd.derived_status as line_activation_status \n"
-					+ "			FROM " + dbUser + ".kj4_activation_set_view2 asv\n"
-					+ "			JOIN " + dbUser + ".kj4_activation_set_details asd ON asv.set_transaction_id = asd.set_transaction_id \n"
-					+ "			LEFT JOIN " + dbUser + ".KJ4_SERVICE_VIEW5 kjserv5 ON kjserv5.ACTIV_NO = asd.ACTIV_NO AND kjserv5.CUST_NO = asd.CUST_NO,\n"
-					+ "		    (SELECT CORP_ID, CORP_DESCRIPTION\n"
-					+ "			FROM " + dbUser + ".KJ4_CORP_VIEW\n"
-					+ "			START WITH CORP_ID = :corpId\n"
-					+ "		  	CONNECT BY PRIOR CORP_ID=PARENT_CORP_ID) cv\n"
-					+ "			WHERE asd.device_group = cv.corp_id \n"
-					+ "			ORDER BY asv.entered_timestamp " + sortDir;
+			String sql = sqlRegistry.get(Query.ALL_HISTORY_DETAILS, sortDir);
 			
-			return namedParameterJdbcTemplate.query(sql, parameters, (resultSet, i) -> {
-				ActivationTransactionDTO activationTransactionDTO = new ActivationTransactionDTO();
-				activationTransactionDTO.setTransactionId(resultSet.getString("set_transaction_id"));
-				activationTransactionDTO.setTotalLines(resultSet.getInt("line_count"));
-				activationTransactionDTO.setSuccessLines(resultSet.getInt("completed_count"));
-				activationTransactionDTO.setFailedLines(resultSet.getInt("failed_count"));
-				activationTransactionDTO.setStatus(resultSet.getString("transaction_status"));
-				activationTransactionDTO.setTransactionStartTimestamp(resultSet.getString("transaction_timestamp"));
-				activationTransactionDTO.setCarrier(resultSet.getString("carrier"));
-				activationTransactionDTO.setCorpId(resultSet.getString("device_group"));
-				activationTransactionDTO.setCorpDescription(resultSet.getString("corp_description"));
-				activationTransactionDTO.setFilterGroup(resultSet.getString("filter_group"));
-				activationTransactionDTO.setZipCode(resultSet.getString("service_zip_code"));
-				activationTransactionDTO.setImei(resultSet.getString("imei"));
-				activationTransactionDTO.setIccid(resultSet.getString("iccid"));
-				activationTransactionDTO.setMdn(resultSet.getString("mdn"));
-				activationTransactionDTO.setNickname(resultSet.getString("nickname"));
-				activationTransactionDTO.setIp(resultSet.getString("ip"));
-				activationTransactionDTO.setLineActivationStatus(resultSet.getString("line_activation_status"));
-				
-				return activationTransactionDTO;
-				
-			});
+			return timedQuery(Query.ALL_HISTORY_DETAILS, () -> readRouting.forRead(corpId).query(sql, parameters,
+					dedupeHistoryStrings ? ActivationRowMappers.historyDetailsDeduplicating() : ActivationRowMappers.HISTORY_DETAILS));
 		} catch (Exception e) {
 			log.error("Could not get activation transaction history for corp: {}.  Exception: {}", corpId, e);
 			return Collections.emptyList();
@@ -458,32 +511,14 @@ public class ActivationDaoImpl implements ActivationDao{
 		parameters.addValue("corpId", corpId);
 		parameters.addValue("offset", offset);
 		parameters.addValue("limit", limit);
-		validateUserTimeZone(userTimezone);
-		userTimezone = "'" + userTimezone + "'"; // move quotes to the query to spare some RAM?
+		parameters.addValue("userTimezone", validateUserTimeZone(userTimezone));
 
 		// query will fetch last 180 days of activation transactions with pagination
 		try {
-			String sql = "SELECT  set_transaction_id, line_count, completed_count, failed_count, pending_count, derived_status, \n"
-					+ "TO_CHAR(FROM_TZ(cast(DATE_ENTERED as timestamp), substr(entered_timestamp, -6)) AT TIME ZONE \n"
-					+ userTimezone + ",'MM/dd/yyyy HH:MI:SS AM') transaction_timestamp FROM " + dbUser
-					+ ".kj4_activation_set_view2 \n" + "WHERE corp_id IN (SELECT CORP_ID FROM " + dbUser
-					+ ".KJ4_CORP_VIEW START WITH CORP_ID = :corpId \n" + "CONNECT BY PRIOR CORP_ID=PARENT_CORP_ID) \n"
-					+ "AND date_entered >= SYSDATE - 180 \n"
-					+ "ORDER BY entered_timestamp " + sortDir
-					+ "\n OFFSET :offset ROWS FETCH FIRST :limit ROWS ONLY";
-
-			return namedParameterJdbcTemplate.query(sql, parameters, (resultSet, i) -> {
-				ActivationTransactionDTO activationTransactionDTO = new ActivationTransactionDTO();
-				activationTransactionDTO.setTransactionId(resultSet.getString("set_transaction_id"));
-				activationTransactionDTO.setStatus(resultSet.getString("derived_status"));
-				activationTransactionDTO.setTransactionStartTimestamp(resultSet.getString("transaction_timestamp"));
-				activationTransactionDTO.setTotalLines(resultSet.getInt("line_count"));
-				activationTransactionDTO.setSuccessLines(resultSet.getInt("completed_count"));
-				activationTransactionDTO.setFailedLines(resultSet.getInt("failed_count"));
-				activationTransactionDTO.setPendingLines(resultSet.getInt("pending_count"));
-				return activationTransactionDTO;
+			String sql = sqlRegistry.get(Query.RECENT_TRANSACTIONS, sortDir);
 
-			});
+			return timedQuery(Query.RECENT_TRANSACTIONS, () -> readRouting.forRead(corpId).query(sql, parameters,
+					ActivationRowMappers.TRANSACTION_SUMMARY));
 		} catch (Exception e) {
 			log.error("Could not get recent activation transactions for corp: {}.  Exception: {}", corpId, e);
 			return Collections.emptyList();
@@ -497,42 +532,15 @@ public class ActivationDaoImpl implements ActivationDao{
 		
 		MapSqlParameterSource parameters = new MapSqlParameterSource();
 		parameters.addValue("corpId", corpId);
-		validateUserTimeZone(userTimezone);
-		userTimezone = "'" + userTimezone + "'";
+		parameters.addValue("userTimezone", validateUserTimeZone(userTimezone));
 		parameters.addValue("transactionId", transactionId);
 		
 		try {
-			String sql = "SELECT set_transaction_id, device_group, cv.corp_description, service_zip_code, filter_group,\n"
-					+ "			carrier, TO_CHAR(FROM_TZ(cast(DATE_ENTERED as timestamp), substr(entered_timestamp, -6)) AT TIME ZONE \n"
-					+ userTimezone
-					+ ", 'MM/dd/yyyy HH:MI:SS AM') transaction_timestamp, \n"
-					+ "			act.imei, act.iccid, derived_status, act.mdn, ip, nvl(nickname,'N/A') as nickname\n"
-					+ "			FROM " + dbUser + ".kj4_activation_set_details act\n"
-					+ "			LEFT JOIN " + dbUser + ".KJ4_SERVICE_VIEW5 kjserv5 ON kjserv5.ACTIV_NO = act.ACTIV_NO AND kjserv5.CUST_NO = act.CUST_NO,\n"
-					+ "		    (SELECT CORP_ID, CORP_DESCRIPTION\n"
-					+ "			FROM " + dbUser + ".KJ4_CORP_VIEW\n"
-					+ "			START WITH CORP_ID = :corpId\n"
-					+ "		  	CONNECT BY PRIOR CORP_ID=PARENT_CORP_ID) cv\n"
-					+ "			WHERE act.device_group = cv.corp_id AND act.set_transaction_id = :transactionId";
+			String sql = sqlRegistry.get(Query.TRANSACTION_DETAILS);
 			
 
-			return namedParameterJdbcTemplate.query(sql, parameters, (resultSet, i) -> {
-					ActivationTransactionDTO activationTransactionDTO = new ActivationTransactionDTO();
-					activationTransactionDTO.setTransactionId(resultSet.getString("set_transaction_id"));
-					activationTransactionDTO.setCorpId(resultSet.getString("device_group"));
-					activationTransactionDTO.setCorpDescription(resultSet.getString("corp_description"));
-					activationTransactionDTO.setZipCode(resultSet.getString("service_zip_code"));
-					activationTransactionDTO.setFilterGroup(resultSet.getString("filter_group"));
-					activationTransactionDTO.setCarrier(resultSet.getString("carrier"));
-					activationTransactionDTO.setTransactionStartTimestamp(resultSet.getString("transaction_timestamp"));
-					activationTransactionDTO.setImei(resultSet.getString("imei"));
-					activationTransactionDTO.setIccid(resultSet.getString("iccid"));
-					activationTransactionDTO.setStatus(resultSet.getString("derived_status"));
-					activationTransactionDTO.setMdn(resultSet.getString("mdn"));
-					activationTransactionDTO.setIp(resultSet.getString("ip"));
-					activationTransactionDTO.setNickname(resultSet.getString("nickname"));
-					return activationTransactionDTO;
-			});
+			return timedQuery(Query.TRANSACTION_DETAILS, () -> readRouting.forRead(corpId).query(sql, parameters,
+					dedupeHistoryStrings ? ActivationRowMappers.transactionDetailsDeduplicating() : ActivationRowMappers.TRANSACTION_DETAILS));
 		} catch (Exception e) {
 			log.error("Could not get activation transaction details for corp: {} and transactionId: {}.  Exception: {}", corpId, transactionId, e);
 			return Collections.emptyList();
@@ -540,12 +548,230 @@ public class ActivationDaoImpl implements ActivationDao{
 		
 	}
 	
-    private void validateUserTimeZone(String userTimezone){
-        if (!Arrays.asList(TimeZone.getAvailableIDs()).contains(userTimezone)) {
+	@Override
+	public Map<String, List<ActivationTransactionDTO>> getActivationTransactionDetails(List<String> transactionIds,
+			String corpId, String userTimezone) {
+
+		Map<String, List<ActivationTransactionDTO>> detailsByTransaction = new LinkedHashMap<>();
+		transactionIds.forEach(transactionId -> detailsByTransaction.put(transactionId, new ArrayList<>()));
+
+		MapSqlParameterSource parameters = new MapSqlParameterSource();
+		parameters.addValue("corpId", corpId);
+		parameters.addValue("userTimezone", validateUserTimeZone(userTimezone));
+		addStringArray(parameters, "transactionIds", transactionIds);
+
+		try {
+			String sql = sqlRegistry.get(Query.TRANSACTION_DETAILS_BATCH);
+
+			timedQuery(Query.TRANSACTION_DETAILS_BATCH, () -> readRouting.forRead(corpId).query(sql, parameters,
+					dedupeHistoryStrings ? ActivationRowMappers.transactionDetailsDeduplicating() : ActivationRowMappers.TRANSACTION_DETAILS))
+					.forEach(detail -> detailsByTransaction
+							.computeIfAbsent(detail.getTransactionId(), transactionId -> new ArrayList<>()).add(detail));
+		} catch (Exception e) {
+			log.error("Could not get activation transaction details for corp: {} and transactionIds: {}.  Exception: {}", corpId, transactionIds, e);
+			detailsByTransaction.values().forEach(List::clear);
+		}
+		return detailsByTransaction;
+	}
+
+	@Override
+	public List<ActivationTransactionDTO> getActivationProgress(List<String> transactionIds) {
+		MapSqlParameterSource parameters = new MapSqlParameterSource();
+		addStringArray(parameters, "transactionIds", transactionIds);
+		try {
+			String sql = sqlRegistry.get(Query.ACTIVATION_PROGRESS);
+
+			// the poller tracks transactions that were just submitted, which the replica may not have yet
+			return timedQuery(Query.ACTIVATION_PROGRESS, () -> readRouting.forPrimaryRead().query(sql, parameters,
+					ActivationRowMappers.TRANSACTION_SUMMARY));
+		} catch (Exception e) {
+			log.error("Could not get activation progress for transactionIds: {}", transactionIds, e);
+			return Collections.emptyList();
+		}
+	}
+
+	@Override
+	public List<ActivationTransactionDTO> getActivationProgress(List<String> transactionIds, String corpId) {
+		MapSqlParameterSource parameters = new MapSqlParameterSource();
+		parameters.addValue("corpId", corpId);
+		addStringArray(parameters, "transactionIds", transactionIds);
+		try {
+			String sql = sqlRegistry.get(Query.ACTIVATION_PROGRESS_FOR_CORP);
+
+			return timedQuery(Query.ACTIVATION_PROGRESS_FOR_CORP, () -> readRouting.forRead(corpId).query(sql, parameters,
+					ActivationRowMappers.TRANSACTION_SUMMARY));
+		} catch (Exception e) {
+			log.error("Could not get activation progress for corp: {} and transactionIds: {}", corpId, transactionIds, e);
+			return Collections.emptyList();
+		}
+	}
+
+	/**
+	 * Binds the values as one Oracle collection so the statement text does not depend on how many there are.
+	 */
+	private void addStringArray(MapSqlParameterSource parameters, String name, List<String> values) {
+		parameters.addValue(name, new AbstractSqlTypeValue() {
+			@Override
+			protected Object createTypeValue(Connection connection, int sqlType, String typeName) throws SQLException {
+				return connection.unwrap(OracleConnection.class).createOracleArray(typeName,
+						values.toArray(new String[0]));
+			}
+		}, Types.ARRAY, STRING_ARRAY_TYPE);
+	}
+
+	@Override
+	public ActivationHistoryDelta getActivationHistoryDelta(String corpId, ActivationHistoryWatermark after, int limit,
+			String userTimezone) {
+
+		MapSqlParameterSource parameters = new MapSqlParameterSource();
+		parameters.addValue("corpId", corpId);
+		parameters.addValue("userTimezone", validateUserTimeZone(userTimezone));
+		parameters.addValue("enteredAfter", new Timestamp(after.getEnteredAt()));
+		parameters.addValue("transactionIdAfter", after.getTransactionId());
+		parameters.addValue("openSince", after.getOpenSince() == null ? null : new Timestamp(after.getOpenSince()), Types.TIMESTAMP);
+		// a new pass over the open range starts just before openSince
+		boolean resumeOpenPass = after.getOpenAfterEnteredAt() != null && after.getOpenAfterTransactionId() != null;
+		long openAfter = resumeOpenPass ? after.getOpenAfterEnteredAt() : after.getOpenSince() == null ? 0L : after.getOpenSince();
+		parameters.addValue("openAfter", new Timestamp(openAfter));
+		parameters.addValue("openTransactionIdAfter", resumeOpenPass ? after.getOpenAfterTransactionId() : "-1");
+		parameters.addValue("limit", limit);
+
+		ActivationHistoryTable table = new ActivationHistoryTable();
+		ActivationRowMappers.HistoryDeltaRowHandler rowHandler = ActivationRowMappers.historyDeltaInto(table, after, limit);
+		String sql = sqlRegistry.get(Query.HISTORY_DELTA);
+
+		timedQuery(Query.HISTORY_DELTA, () -> {
+			readRouting.forRead(corpId).query(sql, parameters, rowHandler);
+			return null;
+		});
+		return new ActivationHistoryDelta(table, rowHandler.nextWatermark(), rowHandler.hasMore());
+	}
+
+	@Override
+	public List<ActivationTransactionDTO> findActivationLinesByDeviceIdentifiers(String corpId, List<String> imeis,
+			List<String> iccids, List<String> mdns, String userTimezone) {
+
+		MapSqlParameterSource parameters = new MapSqlParameterSource();
+		parameters.addValue("corpId", corpId);
+		parameters.addValue("userTimezone", validateUserTimeZone(userTimezone));
+		addStringArray(parameters, "imeis", imeis);
+		addStringArray(parameters, "iccids", iccids);
+		addStringArray(parameters, "mdns", mdns);
+
+		try {
+			String sql = sqlRegistry.get(Query.DEVICE_IDENTIFIER_LOOKUP);
+
+			return timedQuery(Query.DEVICE_IDENTIFIER_LOOKUP, () -> readRouting.forRead(corpId).query(sql, parameters,
+					ActivationRowMappers.HISTORY_DETAILS));
+		} catch (Exception e) {
+			log.error("Could not look up activation lines by device identifier for corp: {}", corpId, e);
+			return Collections.emptyList();
+		}
+	}
+
+	@Override
+	public Range<Date> getActivationHistoryDateRange(String corpId) {
+		MapSqlParameterSource parameters = new MapSqlParameterSource();
+		parameters.addValue("corpId", corpId);
+
+		String sql = sqlRegistry.get(Query.HISTORY_DATE_RANGE);
+		return timedQuery(Query.HISTORY_DATE_RANGE, () -> readRouting.forRead(corpId).queryForObject(sql, parameters, (resultSet, i) -> {
+			Timestamp first = resultSet.getTimestamp(1);
+			Timestamp last = resultSet.getTimestamp(2);
+			return first == null || last == null ? null : Range.between(new Date(first.getTime()), new Date(last.getTime()));
+		}));
+	}
+
+	/**
+	 * Streams line-level history entered in [fromDate, toDate) to the consumer without holding the result in
+	 * memory. A null bound is open. Unlike the other history reads, failures are thrown to the caller.
+	 */
+	@Override
+	public void streamActivationHistoryDetails(String corpId, String sortDir, String userTimezone, Date fromDate,
+			Date toDate, Consumer<ActivationTransactionDTO> consumer) {
+
+		MapSqlParameterSource parameters = new MapSqlParameterSource();
+		parameters.addValue("corpId", corpId);
+		parameters.addValue("userTimezone", validateUserTimeZone(userTimezone));
+		if (fromDate != null) {
+			parameters.addValue("fromDate", new Timestamp(fromDate.getTime()), Types.TIMESTAMP);
+		}
+		if (toDate != null) {
+			parameters.addValue("toDate", new Timestamp(toDate.getTime()), Types.TIMESTAMP);
+		}
+
+		String sql = sqlRegistry.get(ActivationSqlRegistry.getExportPartition(fromDate != null, toDate != null), sortDir);
+		timedQuery(Query.HISTORY_EXPORT_PARTITION, () -> {
+			readRouting.forExport(corpId).query(sql, parameters, (RowCallbackHandler) resultSet ->
+					consumer.accept(ActivationRowMappers.HISTORY_DETAILS.mapRow(resultSet, resultSet.getRow())));
+			return null;
+		});
+	}
+
+	@Override
+	public ActivationHistoryTable getAllActivationHistoryDetailsTable(String corpId, String sortDir,
+			String userTimezone) {
+
+		MapSqlParameterSource parameters = new MapSqlParameterSource();
+		parameters.addValue("corpId", corpId);
+		parameters.addValue("userTimezone", validateUserTimeZone(userTimezone));
+
+		ActivationHistoryTable table = new ActivationHistoryTable();
+		try {
+			String sql = sqlRegistry.get(Query.ALL_HISTORY_DETAILS, sortDir);
+
+			return timedQuery(Query.ALL_HISTORY_DETAILS, () -> {
+				readRouting.forRead(corpId).query(sql, parameters, ActivationRowMappers.historyDetailsInto(table));
+				return table;
+			});
+		} catch (Exception e) {
+			log.error("Could not get activation transaction history for corp: {}.  Exception: {}", corpId, e);
+			return new ActivationHistoryTable();
+		}
+	}
+
+	@Override
+	public ActivationHistoryTable getActivationTransactionDetailsTable(String transactionId, String corpId,
+			String userTimezone) {
+
+		MapSqlParameterSource parameters = new MapSqlParameterSource();
+		parameters.addValue("corpId", corpId);
+		parameters.addValue("userTimezone", validateUserTimeZone(userTimezone));
+		parameters.addValue("transactionId", transactionId);
+
+		ActivationHistoryTable table = new ActivationHistoryTable();
+		try {
+			String sql = sqlRegistry.get(Query.TRANSACTION_DETAILS);
+
+			return timedQuery(Query.TRANSACTION_DETAILS, () -> {
+				readRouting.forRead(corpId).query(sql, parameters, ActivationRowMappers.transactionDetailsInto(table));
+				return table;
+			});
+		} catch (Exception e) {
+			log.error("Could not get activation transaction details for corp: {} and transactionId: {}.  Exception: {}", corpId, transactionId, e);
+			return new ActivationHistoryTable();
+		}
+	}
+
+	private <T> T timedQuery(Query query, Supplier<T> execution) {
+		long started = System.nanoTime();
+		boolean success = false;
+		try {
+			T result = execution.get();
+			success = true;
+			return result;
+		} finally {
+			metrics.recordQuery(query.name(), started, success);
+		}
+	}
+
+    private String validateUserTimeZone(String userTimezone){
+        if (!AVAILABLE_TIME_ZONES.contains(userTimezone)) {
         	log.error("Invalid userTimezone: {}", userTimezone);
         	//Set a default timezone 
-        	userTimezone = "US/Eastern"; // not used. Bug?
+        	return DEFAULT_TIME_ZONE;
         }
+        return userTimezone;
     }
 
 	@Override
@@ -556,10 +782,10 @@ public class ActivationDaoImpl implements ActivationDao{
 		parameters.addValue("carrier", carrier);
 		
 		try {
-			String sql = "SELECT carrier_account_id FROM corp_carrier_account WHERE carrier = :carrier AND corp_id = :corpId ";
+			String sql = sqlRegistry.get(Query.CARRIER_ACCOUNT_ID);
 			
-			return namedParameterJdbcTemplate.queryForObject(sql, parameters,
-					String.class);
+			return timedQuery(Query.CARRIER_ACCOUNT_ID, () -> readRouting.forRead(corpId).queryForObject(sql, parameters,
+					String.class));
 
 		} catch (Exception e) {
 			log.error("Could not get accountId for carrier: {} and corp: {}.  Exception: {}", carrier, corpId, e);
@@ -573,11 +799,10 @@ public class ActivationDaoImpl implements ActivationDao{
 		MapSqlParameterSource parameters = new MapSqlParameterSource();
 		parameters.addValue("businessType", businessType);
 		try {
-			String sql = "SELECT carrier_friendly_name as carrier_name, bearer_path FROM " + dbUser + ".kj4_carrier_business_types_view1\n " +
-					"WHERE business_type = :businessType";
+			String sql = sqlRegistry.get(Query.CARRIER_BEARER_PATHS);
 
-			return namedParameterJdbcTemplate.query(sql, parameters,
-					new BeanPropertyRowMapper<>(CarrierBearerPath.class));
+			return timedQuery(Query.CARRIER_BEARER_PATHS, () -> readRouting.forRead(null).query(sql, parameters,
+					ActivationRowMappers.CARRIER_BEARER_PATH));
 
 		} catch (Exception e) {
 			log.error("Could not get carrier bearer paths for business type: {}", businessType, e);
@@ -590,11 +815,10 @@ public class ActivationDaoImpl implements ActivationDao{
 		MapSqlParameterSource parameters = new MapSqlParameterSource();
 		parameters.addValue("corpId", corpId);
 		try {
-			String sql = "SELECT COUNT(*) FROM " + dbUser + ".KJ4_ACTIVATION_SET_VIEW2 \n"
-					+ "WHERE CORP_ID IN (SELECT CORP_ID FROM " + dbUser + ".KJ4_CORP_VIEW START WITH CORP_ID = :corpId \n"
-					+ "CONNECT BY PRIOR CORP_ID=PARENT_CORP_ID) and date_entered >= sysdate - 180";
+			String sql = sqlRegistry.get(Query.RECENT_HISTORY_COUNT);
 
-			return namedParameterJdbcTemplate.queryForObject(sql, parameters, Integer.class);
+			return timedQuery(Query.RECENT_HISTORY_COUNT, () -> readRouting.forRead(corpId).queryForObject(sql, parameters,
+					Integer.class));
 
 		} catch (Exception e) {
 			log.error("Could not last 180 days of activation history count for corpId: {}", corpId, e);
@@ -602,26 +826,30 @@ public class ActivationDaoImpl implements ActivationDao{
 		}
 	}
 
+	@Override
+	public String getRecentActivationHistoryWatermark(String corpId) {
+		MapSqlParameterSource parameters = new MapSqlParameterSource();
+		parameters.addValue("corpId", corpId);
+		try {
+			String sql = sqlRegistry.get(Query.RECENT_HISTORY_WATERMARK);
+
+			return timedQuery(Query.RECENT_HISTORY_WATERMARK, () -> readRouting.forRead(corpId).queryForObject(sql, parameters,
+					String.class));
+
+		} catch (Exception e) {
+			log.error("Could not get activation history watermark for corpId: {}", corpId, e);
+			return null;
+		}
+	}
+
 	@Override
 	public List<ActivationVerizonBusinessPlan> getBusinessInternetPlans() {
 
 		List<ActivationVerizonBusinessPlan> activationVerizonBusinessPlanList = null;
 		try {
-			String sql = "SELECT PLAN_ID,"
-					+ "PLAN_DESC,"
-                    + "FRIENDLY_NAME,"
-					+ "WH_PLAN_ID,"
-					+ "CARRIER  FROM  " + dbUser + ".KJ4_VERIZON_TS_3RDP_PLANS_VIEW kvtpv";
-				activationVerizonBusinessPlanList = namedParameterJdbcTemplate.query(sql, (resultSet, i) -> {
-				ActivationVerizonBusinessPlan activationVerizonBusinessPlan = new ActivationVerizonBusinessPlan();
-				activationVerizonBusinessPlan.setPlanDescriptionFull(resultSet.getString("PLAN_DESC"));
-                activationVerizonBusinessPlan.setPlanDescription(resultSet.getString("FRIENDLY_NAME"));
-				activationVerizonBusinessPlan.setPlanId(resultSet.getString("PLAN_ID"));
-				activationVerizonBusinessPlan.setWhPlanId(resultSet.getString("WH_PLAN_ID"));
-				activationVerizonBusinessPlan.setCarrier(resultSet.getString("CARRIER"));
-				return activationVerizonBusinessPlan;
-
-			});
+			String sql = sqlRegistry.get(Query.BUSINESS_INTERNET_PLANS);
+				activationVerizonBusinessPlanList = timedQuery(Query.BUSINESS_INTERNET_PLANS,
+						() -> readRouting.forRead(null).query(sql, ActivationRowMappers.BUSINESS_INTERNET_PLAN));
 			return activationVerizonBusinessPlanList;
 
 		} catch (Exception e) {
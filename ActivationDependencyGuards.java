@@ -0,0 +1,73 @@
+package com.kajeet.sentinel.activation.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import com.kajeet.sentinel.activation.metrics.ActivationMetrics;
+
+/**
+ * One {@link DependencyGuard} per remote collaborator of the activation service. Settings are read from
+ * activation.dependency.&lt;name&gt;.* and fall back to activation.dependency.*. Hedging is off unless
+ * hedgeDelayMillis is set. timeoutMillis and hedging apply to reads only; state-changing calls are never
+ * timed out.
+ */
+@Component
+public class ActivationDependencyGuards implements DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(ActivationDependencyGuards.class);
+
+	static final String KEMP = "kemp";
+	static final String PROVISIONING_GATEWAY = "provisioning_gateway";
+	static final String WEB_FILTERING = "web_filtering";
+
+	private final DependencyGuard kemp;
+	private final DependencyGuard provisioningGateway;
+	private final DependencyGuard webFiltering;
+
+	public ActivationDependencyGuards(Environment environment, ActivationMetrics activationMetrics) {
+		this.kemp = createGuard(KEMP, environment, activationMetrics);
+		this.provisioningGateway = createGuard(PROVISIONING_GATEWAY, environment, activationMetrics);
+		this.webFiltering = createGuard(WEB_FILTERING, environment, activationMetrics);
+	}
+
+	DependencyGuard kemp() {
+		return kemp;
+	}
+
+	DependencyGuard provisioningGateway() {
+		return provisioningGateway;
+	}
+
+	DependencyGuard webFiltering() {
+		return webFiltering;
+	}
+
+	@Override
+	public void destroy() {
+		kemp.shutdown();
+		provisioningGateway.shutdown();
+		webFiltering.shutdown();
+	}
+
+	private static DependencyGuard createGuard(String name, Environment environment, ActivationMetrics activationMetrics) {
+		long timeoutMillis = getProperty(environment, name, "timeoutMillis", 30000L);
+		long hedgeDelayMillis = getProperty(environment, name, "hedgeDelayMillis", 0L);
+		int failureThreshold = getProperty(environment, name, "failureThreshold", 5);
+		long openMillis = getProperty(environment, name, "openMillis", 30000L);
+		int maxConcurrentCalls = getProperty(environment, name, "maxConcurrentCalls", 32);
+		log.info("Dependency {} guarded with a {} ms read timeout, {} ms hedge delay, circuit opening after {} failures for {} ms",
+				name, timeoutMillis, hedgeDelayMillis, failureThreshold, openMillis);
+		return new DependencyGuard(name, timeoutMillis, hedgeDelayMillis, failureThreshold, openMillis,
+				maxConcurrentCalls, activationMetrics);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T getProperty(Environment environment, String name, String property, T defaultValue) {
+		Class<T> type = (Class<T>) defaultValue.getClass();
+		T globalValue = environment.getProperty("activation.dependency." + property, type, defaultValue);
+		return environment.getProperty("activation.dependency." + name + "." + property, type, globalValue);
+	}
+}
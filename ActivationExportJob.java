@@ -0,0 +1,104 @@
+package com.kajeet.sentinel.activation.model;
+
+import java.util.Date;
+
+/**
+ * Status of a background activation history export.
+ */
+public class ActivationExportJob {
+
+	public enum Status {
+		QUEUED, RUNNING, COMPLETED, FAILED
+	}
+
+	private String jobId;
+	private String corpId;
+	private volatile Status status = Status.QUEUED;
+	private int totalPartitions;
+	private volatile int completedPartitions;
+	private volatile long rowCount;
+	private volatile long fileSize;
+	private Date createdAt;
+	private volatile Date completedAt;
+	private volatile String error;
+
+	public String getJobId() {
+		return jobId;
+	}
+
+	public void setJobId(String jobId) {
+		this.jobId = jobId;
+	}
+
+	public String getCorpId() {
+		return corpId;
+	}
+
+	public void setCorpId(String corpId) {
+		this.corpId = corpId;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public void setStatus(Status status) {
+		this.status = status;
+	}
+
+	public int getTotalPartitions() {
+		return totalPartitions;
+	}
+
+	public void setTotalPartitions(int totalPartitions) {
+		this.totalPartitions = totalPartitions;
+	}
+
+	public int getCompletedPartitions() {
+		return completedPartitions;
+	}
+
+	public void setCompletedPartitions(int completedPartitions) {
+		this.completedPartitions = completedPartitions;
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	public void setRowCount(long rowCount) {
+		this.rowCount = rowCount;
+	}
+
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	public void setFileSize(long fileSize) {
+		this.fileSize = fileSize;
+	}
+
+	public Date getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(Date createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	public Date getCompletedAt() {
+		return completedAt;
+	}
+
+	public void setCompletedAt(Date completedAt) {
+		this.completedAt = completedAt;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+}
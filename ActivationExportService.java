@@ -0,0 +1,19 @@
+package com.kajeet.sentinel.activation.service;
+
+import org.springframework.core.io.Resource;
+
+import com.kajeet.sentinel.activation.model.ActivationExportJob;
+import com.kajeet.sentinel.exception.RecordNotFoundException;
+
+public interface ActivationExportService {
+
+	ActivationExportJob startActivationHistoryExport(String corpId, String sortDir, String userTimezone);
+
+	ActivationExportJob getExportJob(String jobId, String corpId) throws RecordNotFoundException;
+
+	/**
+	 * The gzip-compressed CSV of a completed job. Returned as a file resource so HTTP range requests can be
+	 * used to resume a download.
+	 */
+	Resource getExportFile(String jobId, String corpId) throws RecordNotFoundException;
+}
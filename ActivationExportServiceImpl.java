@@ -0,0 +1,393 @@
+package com.kajeet.sentinel.activation.service.impl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.lang3.Range;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.kajeet.sentinel.activation.dao.ActivationDao;
+import com.kajeet.sentinel.activation.model.ActivationExportJob;
+import com.kajeet.sentinel.activation.model.ActivationExportJob.Status;
+import com.kajeet.sentinel.activation.model.ActivationTransactionDTO;
+import com.kajeet.sentinel.activation.service.ActivationExportService;
+import com.kajeet.sentinel.exception.BadRequest;
+import com.kajeet.sentinel.exception.RecordNotFoundException;
+import com.kajeet.sentinel.exception.ServiceUnavailableException;
+
+/**
+ * Runs activation history exports in the background. Each export is split into date-range partitions that run
+ * in parallel on a bounded pool, each streaming its rows into its own gzip file in the spool directory. The
+ * partition files are then concatenated, in sort order, into one multi-member gzip file.
+ * At most maxJobs exports are accepted at a time. Each export has at most partitionsPerJob partitions queued
+ * or running, and requeues behind other exports after every partition, so one large export cannot hold the
+ * pool while smaller ones wait. The spool directory is cleared at startup, since job state is not kept
+ * across restarts.
+ */
+@Service
+public class ActivationExportServiceImpl implements ActivationExportService, DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(ActivationExportServiceImpl.class);
+
+	private static final String[] CSV_HEADER = { "Transaction ID", "Total Lines", "Successful Lines", "Failed Lines",
+			"Transaction Status", "Transaction Timestamp", "Carrier", "Device Group", "Device Group Name",
+			"Filter Group", "Zip Code", "IMEI", "ICCID", "MDN", "Nickname", "IP", "Line Status" };
+
+	private final ActivationDao activationDao;
+	private final Path spoolDirectory;
+	private final long partitionMillis;
+	private final long retentionMillis;
+	private final int maxJobs;
+	private final int partitionsPerJob;
+	private final ThreadPoolExecutor executor;
+	private final ConcurrentMap<String, ActivationExportJob> jobs = new ConcurrentHashMap<>();
+	private final AtomicInteger runningJobs = new AtomicInteger();
+
+	public ActivationExportServiceImpl(ActivationDao activationDao,
+			@Value("${activation.export.spoolDir:${java.io.tmpdir}/activation-exports}") String spoolDirectory,
+			@Value("${activation.export.threads:4}") int threads,
+			@Value("${activation.export.maxJobs:20}") int maxJobs,
+			@Value("${activation.export.partitionsPerJob:2}") int partitionsPerJob,
+			@Value("${activation.export.partitionDays:90}") int partitionDays,
+			@Value("${activation.export.retentionHours:24}") int retentionHours) throws IOException {
+		this.activationDao = activationDao;
+		this.spoolDirectory = Files.createDirectories(Paths.get(spoolDirectory));
+		this.partitionMillis = TimeUnit.DAYS.toMillis(partitionDays);
+		this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+		this.maxJobs = maxJobs;
+		this.partitionsPerJob = Math.max(1, partitionsPerJob);
+		// bounded by maxJobs * partitionsPerJob, admission is checked per job
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>(), new CustomizableThreadFactory("activation-export-"));
+		sweepSpoolDirectory();
+	}
+
+	@Override
+	public ActivationExportJob startActivationHistoryExport(String corpId, String sortDir, String userTimezone) {
+		String sortDirection = StringUtils.upperCase(StringUtils.defaultIfEmpty(sortDir, "DESC"));
+		List<Date[]> partitions = partition(activationDao.getActivationHistoryDateRange(corpId), "ASC".equals(sortDirection));
+
+		ActivationExportJob job = new ActivationExportJob();
+		job.setJobId(UUID.randomUUID().toString());
+		job.setCorpId(corpId);
+		job.setCreatedAt(new Date());
+		job.setTotalPartitions(partitions.size());
+
+		if (runningJobs.incrementAndGet() > maxJobs) {
+			runningJobs.decrementAndGet();
+			log.warn("Rejecting activation export for corp: {}, {} exports already running", corpId, maxJobs);
+			throw new ServiceUnavailableException("Too many exports in progress. Please try again later.");
+		}
+		Path partitionDirectory;
+		try {
+			partitionDirectory = Files.createDirectories(spoolDirectory.resolve(job.getJobId()));
+		} catch (IOException e) {
+			runningJobs.decrementAndGet();
+			throw new UncheckedIOException(e);
+		}
+
+		jobs.put(job.getJobId(), job);
+		new ExportRun(job, sortDirection, userTimezone, partitions, partitionDirectory).start();
+		log.info("Started activation export {} for corp: {} with {} partitions", job.getJobId(), corpId, partitions.size());
+		return job;
+	}
+
+	@Override
+	public ActivationExportJob getExportJob(String jobId, String corpId) throws RecordNotFoundException {
+		ActivationExportJob job = jobs.get(jobId);
+		if (job == null || !job.getCorpId().equals(corpId)) {
+			throw new RecordNotFoundException("Export job not found: " + jobId);
+		}
+		return job;
+	}
+
+	@Override
+	public Resource getExportFile(String jobId, String corpId) throws RecordNotFoundException {
+		ActivationExportJob job = getExportJob(jobId, corpId);
+		if (job.getStatus() != Status.COMPLETED) {
+			throw new BadRequest("Export job " + jobId + " is not complete");
+		}
+		return new FileSystemResource(exportFile(jobId).toFile());
+	}
+
+	@Scheduled(fixedDelayString = "${activation.export.purgeIntervalMillis:600000}")
+	public void purgeExpiredJobs() {
+		long expiredBefore = System.currentTimeMillis() - retentionMillis;
+		jobs.values().removeIf(job -> {
+			Date completedAt = job.getCompletedAt();
+			if (completedAt == null || completedAt.getTime() > expiredBefore) {
+				return false;
+			}
+			deleteQuietly(exportFile(job.getJobId()));
+			return true;
+		});
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Splits the history into fixed-width date windows. The first and last windows are open ended so rows
+	 * outside the estimated range are still exported.
+	 */
+	private List<Date[]> partition(Range<Date> range, boolean ascending) {
+		List<Date[]> partitions = new ArrayList<>();
+		if (range == null) {
+			partitions.add(new Date[] { null, null });
+			return partitions;
+		}
+		Date from = null;
+		for (long boundary = range.getMinimum().getTime() + partitionMillis; boundary <= range.getMaximum().getTime(); boundary += partitionMillis) {
+			Date to = new Date(boundary);
+			partitions.add(new Date[] { from, to });
+			from = to;
+		}
+		partitions.add(new Date[] { from, null });
+		if (!ascending) {
+			Collections.reverse(partitions);
+		}
+		return partitions;
+	}
+
+	private void exportPartition(String corpId, String sortDir, String userTimezone, Date[] bounds, Path partitionFile,
+			boolean writeHeader, LongAdder rows) {
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(partitionFile));
+				Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+			if (writeHeader) {
+				writeCsvRow(writer, CSV_HEADER);
+			}
+			activationDao.streamActivationHistoryDetails(corpId, sortDir, userTimezone, bounds[0], bounds[1], line -> {
+				try {
+					writeCsvRow(writer, toCsvRow(line));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				rows.increment();
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void finish(ActivationExportJob job, Path partitionDirectory, int partitionCount, Throwable error) {
+		if (error == null) {
+			Path exportFile = exportFile(job.getJobId());
+			try (OutputStream out = Files.newOutputStream(exportFile)) {
+				for (int i = 0; i < partitionCount; i++) {
+					Files.copy(partitionFile(partitionDirectory, i), out);
+				}
+				job.setFileSize(Files.size(exportFile));
+				job.setStatus(Status.COMPLETED);
+				log.info("Activation export {} completed with {} rows", job.getJobId(), job.getRowCount());
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		if (error != null) {
+			log.error("Activation export {} for corp: {} failed", job.getJobId(), job.getCorpId(), error);
+			job.setError("Export failed. Please try again or contact support.");
+			job.setStatus(Status.FAILED);
+		}
+		job.setCompletedAt(new Date());
+		deleteQuietly(partitionDirectory);
+		runningJobs.decrementAndGet();
+	}
+
+	/**
+	 * Removes partition directories and export files left behind by a previous process.
+	 */
+	private void sweepSpoolDirectory() {
+		int orphans = 0;
+		try (Stream<Path> children = Files.list(spoolDirectory)) {
+			for (Path child : (Iterable<Path>) children::iterator) {
+				deleteQuietly(child);
+				orphans++;
+			}
+			if (orphans > 0) {
+				log.info("Removed {} orphaned entries from export spool directory {}", orphans, spoolDirectory);
+			}
+		} catch (IOException e) {
+			log.warn("Could not sweep export spool directory {}", spoolDirectory, e);
+		}
+	}
+
+	private String[] toCsvRow(ActivationTransactionDTO line) {
+		return new String[] { line.getTransactionId(), String.valueOf(line.getTotalLines()),
+				String.valueOf(line.getSuccessLines()), String.valueOf(line.getFailedLines()), line.getStatus(),
+				line.getTransactionStartTimestamp(), line.getCarrier(), line.getCorpId(), line.getCorpDescription(),
+				line.getFilterGroup(), line.getZipCode(), line.getImei(), line.getIccid(), line.getMdn(),
+				line.getNickname(), line.getIp(), line.getLineActivationStatus() };
+	}
+
+	private static void writeCsvRow(Writer writer, String[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				writer.write(',');
+			}
+			String value = values[i];
+			if (value == null) {
+				continue;
+			}
+			if (StringUtils.containsAny(value, ',', '"', '\n', '\r')) {
+				writer.write('"');
+				writer.write(value.replace("\"", "\"\""));
+				writer.write('"');
+			} else {
+				writer.write(value);
+			}
+		}
+		writer.write("\r\n");
+	}
+
+	private Path exportFile(String jobId) {
+		return spoolDirectory.resolve(jobId + ".csv.gz");
+	}
+
+	private static Path partitionFile(Path partitionDirectory, int partition) {
+		return partitionDirectory.resolve(String.format("part-%05d.csv.gz", partition));
+	}
+
+	private static void deleteQuietly(Path path) {
+		try {
+			if (Files.isDirectory(path)) {
+				try (Stream<Path> children = Files.list(path)) {
+					children.forEach(ActivationExportServiceImpl::deleteQuietly);
+				}
+			}
+			Files.deleteIfExists(path);
+		} catch (IOException e) {
+			log.warn("Could not delete export spool file {}", path, e);
+		}
+	}
+
+	/**
+	 * One export in flight. Each lane exports one partition per pool task and then requeues itself. When a
+	 * partition fails, or the pool refuses a task, the partitions still running are interrupted and no new
+	 * ones start. The job is finished, and its spool directory removed, only after the last lane has stopped.
+	 */
+	private final class ExportRun {
+
+		private final ActivationExportJob job;
+		private final String sortDirection;
+		private final String userTimezone;
+		private final List<Date[]> partitions;
+		private final Path partitionDirectory;
+		private final AtomicInteger nextPartition = new AtomicInteger();
+		private final AtomicInteger completedPartitions = new AtomicInteger();
+		private final AtomicInteger activeLanes = new AtomicInteger();
+		private final LongAdder rows = new LongAdder();
+		private final Set<Thread> runningThreads = ConcurrentHashMap.newKeySet();
+		private volatile Throwable error;
+
+		ExportRun(ActivationExportJob job, String sortDirection, String userTimezone, List<Date[]> partitions,
+				Path partitionDirectory) {
+			this.job = job;
+			this.sortDirection = sortDirection;
+			this.userTimezone = userTimezone;
+			this.partitions = partitions;
+			this.partitionDirectory = partitionDirectory;
+		}
+
+		void start() {
+			int lanes = Math.min(partitionsPerJob, partitions.size());
+			activeLanes.set(lanes);
+			for (int i = 0; i < lanes; i++) {
+				schedule();
+			}
+		}
+
+		private void schedule() {
+			try {
+				executor.execute(this::exportNext);
+			} catch (RejectedExecutionException e) {
+				abort(e);
+				laneStopped();
+			}
+		}
+
+		private void exportNext() {
+			int partition = nextPartition.getAndIncrement();
+			if (error != null || partition >= partitions.size()) {
+				laneStopped();
+				return;
+			}
+			Thread current = Thread.currentThread();
+			synchronized (this) {
+				if (error != null) {
+					laneStopped();
+					return;
+				}
+				runningThreads.add(current);
+			}
+			try {
+				job.setStatus(Status.RUNNING);
+				exportPartition(job.getCorpId(), sortDirection, userTimezone, partitions.get(partition),
+						partitionFile(partitionDirectory, partition), partition == 0, rows);
+				job.setCompletedPartitions(completedPartitions.incrementAndGet());
+				job.setRowCount(rows.sum());
+			} catch (RuntimeException | Error e) {
+				abort(e);
+			} finally {
+				synchronized (this) {
+					runningThreads.remove(current);
+					// an interrupt aimed at this partition must not leak into the next pool task
+					Thread.interrupted();
+				}
+			}
+			if (error != null) {
+				laneStopped();
+			} else {
+				schedule();
+			}
+		}
+
+		private synchronized void abort(Throwable e) {
+			if (error != null) {
+				return;
+			}
+			error = e;
+			runningThreads.forEach(Thread::interrupt);
+		}
+
+		private void laneStopped() {
+			if (activeLanes.decrementAndGet() == 0) {
+				finish(job, partitionDirectory, partitions.size(), error);
+			}
+		}
+	}
+}
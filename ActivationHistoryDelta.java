@@ -0,0 +1,45 @@
+package com.kajeet.sentinel.activation.model;
+
+/**
+ * Lines created or changed since a {@link ActivationHistoryWatermark}, plus the watermark to send next time.
+ * When {@code hasMore} is set the transaction limit was reached and the caller should sync again right away.
+ */
+public class ActivationHistoryDelta {
+
+	private ActivationHistoryTable lines;
+	private ActivationHistoryWatermark nextWatermark;
+	private boolean hasMore;
+
+	public ActivationHistoryDelta() {
+	}
+
+	public ActivationHistoryDelta(ActivationHistoryTable lines, ActivationHistoryWatermark nextWatermark, boolean hasMore) {
+		this.lines = lines;
+		this.nextWatermark = nextWatermark;
+		this.hasMore = hasMore;
+	}
+
+	public ActivationHistoryTable getLines() {
+		return lines;
+	}
+
+	public void setLines(ActivationHistoryTable lines) {
+		this.lines = lines;
+	}
+
+	public ActivationHistoryWatermark getNextWatermark() {
+		return nextWatermark;
+	}
+
+	public void setNextWatermark(ActivationHistoryWatermark nextWatermark) {
+		this.nextWatermark = nextWatermark;
+	}
+
+	public boolean isHasMore() {
+		return hasMore;
+	}
+
+	public void setHasMore(boolean hasMore) {
+		this.hasMore = hasMore;
+	}
+}
@@ -0,0 +1,159 @@
+package com.kajeet.sentinel.activation.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.kajeet.sentinel.activation.dao.ActivationDao;
+import com.kajeet.sentinel.activation.model.ActivationTransactionDTO;
+import com.kajeet.sentinel.devicegroup.HierarchyManager;
+import com.kajeet.sentinel.devicegroup.model.Organization;
+
+/**
+ * Caches the first page and total count of recent activations per corp. Off by default
+ * (activation.history.firstPageCache.enabled).
+ * Entries are dropped for the whole master corp hierarchy when an activation is submitted, and are
+ * revalidated once they are older than activation.history.firstPageCache.validateAfterMillis against a
+ * watermark for the corp: the latest transaction id, which catches submissions made through other instances,
+ * plus the completed and failed counts of transactions that are still pending, which catches status changes
+ * made by the carrier pipeline. Entries are still rebuilt once they are older than
+ * activation.history.firstPageCache.maxAgeMillis.
+ * At most maxCorps corps are kept, least recently used first out. Pages are handed out as unmodifiable
+ * lists since every caller for the corp shares them.
+ */
+@Component
+public class ActivationHistoryFirstPageCache {
+
+	private static final Logger log = LoggerFactory.getLogger(ActivationHistoryFirstPageCache.class);
+
+	@Autowired
+	private ActivationDao activationDao;
+
+	@Autowired
+	private HierarchyManager hierarchyManager;
+
+	@Value("${activation.history.firstPageCache.enabled:false}")
+	private boolean enabled;
+
+	@Value("${activation.history.firstPageCache.validateAfterMillis:5000}")
+	private long validateAfterMillis;
+
+	@Value("${activation.history.firstPageCache.maxAgeMillis:30000}")
+	private long maxAgeMillis;
+
+	@Value("${activation.history.firstPageCache.maxCorps:5000}")
+	private int maxCorps;
+
+	private final Map<String, CorpEntry> entries = Collections.synchronizedMap(new LinkedHashMap<String, CorpEntry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CorpEntry> eldest) {
+			return size() > maxCorps;
+		}
+	});
+
+	public List<ActivationTransactionDTO> getFirstPage(String corpId, List<Object> pageKey,
+			Supplier<List<ActivationTransactionDTO>> loader) {
+		CorpEntry entry = currentEntry(corpId);
+		if (entry == null) {
+			return loader.get();
+		}
+		List<ActivationTransactionDTO> page = entry.pages.get(pageKey);
+		if (page == null) {
+			List<ActivationTransactionDTO> loaded = loader.get();
+			if (loaded == null) {
+				return null;
+			}
+			page = Collections.unmodifiableList(new ArrayList<>(loaded));
+			if (entries.get(corpId) == entry) {
+				entry.pages.put(pageKey, page);
+			}
+		}
+		return page;
+	}
+
+	public Integer getTotalCount(String corpId, Supplier<Integer> loader) {
+		CorpEntry entry = currentEntry(corpId);
+		if (entry == null) {
+			return loader.get();
+		}
+		Integer totalCount = entry.totalCount;
+		if (totalCount == null) {
+			totalCount = loader.get();
+			if (entries.get(corpId) == entry) {
+				entry.totalCount = totalCount;
+			}
+		}
+		return totalCount;
+	}
+
+	/**
+	 * Drops cached pages for every corp under the same master corp as the given corp, which covers the corp
+	 * itself and all of its ancestors.
+	 */
+	public void invalidateHierarchy(String corpId) {
+		if (!enabled || entries.isEmpty()) {
+			return;
+		}
+		String masterCorp = getMasterCorp(corpId);
+		entries.remove(corpId);
+		entries.values().removeIf(entry -> masterCorp.equals(entry.masterCorp));
+		log.debug("Invalidated first page history cache for master corp: {}", masterCorp);
+	}
+
+	private CorpEntry currentEntry(String corpId) {
+		if (!enabled) {
+			return null;
+		}
+		CorpEntry entry = entries.get(corpId);
+		long now = System.currentTimeMillis();
+		if (entry != null && now - entry.validatedAt < validateAfterMillis) {
+			return entry;
+		}
+		String watermark = activationDao.getRecentActivationHistoryWatermark(corpId);
+		if (watermark == null) {
+			entries.remove(corpId);
+			return null;
+		}
+		if (entry != null && watermark.equals(entry.watermark) && now - entry.createdAt < maxAgeMillis) {
+			entry.validatedAt = now;
+			return entry;
+		}
+		CorpEntry created = new CorpEntry(getMasterCorp(corpId), watermark, now);
+		entries.put(corpId, created);
+		return created;
+	}
+
+	private String getMasterCorp(String corpId) {
+		Organization topLevelOrganization = hierarchyManager.getTopLevelOrganization(corpId);
+		return topLevelOrganization == null ? corpId : topLevelOrganization.getCorpId();
+	}
+
+	private static final class CorpEntry {
+
+		private final String masterCorp;
+		private final String watermark;
+		private final Map<List<Object>, List<ActivationTransactionDTO>> pages = new ConcurrentHashMap<>();
+		private volatile Integer totalCount;
+		private final long createdAt;
+		private volatile long validatedAt;
+
+		CorpEntry(String masterCorp, String watermark, long createdAt) {
+			this.masterCorp = masterCorp;
+			this.watermark = watermark;
+			this.createdAt = createdAt;
+			this.validatedAt = createdAt;
+		}
+	}
+}
@@ -0,0 +1,290 @@
+package com.kajeet.sentinel.activation.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Columnar holder for line-level activation history. Transaction-level fields are stored once per
+ * set_transaction_id and repeated line fields (carrier, corp, filter group, zip, status, nickname) are
+ * dictionary encoded into int columns, so a large export costs a few ints per line instead of a full
+ * {@link ActivationTransactionDTO}.
+ * Not thread safe while being filled; read-only use after the query completes is safe.
+ */
+public class ActivationHistoryTable implements Iterable<ActivationHistoryTable.Line> {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final List<String> dictionary = new ArrayList<>();
+	private final Map<String, Integer> dictionaryCodes = new HashMap<>();
+
+	private final Map<String, Integer> transactionIndexes = new HashMap<>();
+	private final List<String> transactionIds = new ArrayList<>();
+	private int[] transactionStatus = new int[INITIAL_CAPACITY];
+	private int[] transactionTimestamp = new int[INITIAL_CAPACITY];
+	private int[] totalLines = new int[INITIAL_CAPACITY];
+	private int[] successLines = new int[INITIAL_CAPACITY];
+	private int[] failedLines = new int[INITIAL_CAPACITY];
+
+	private int lineCount;
+	private int[] lineTransaction = new int[INITIAL_CAPACITY];
+	private int[] carrier = new int[INITIAL_CAPACITY];
+	private int[] corpId = new int[INITIAL_CAPACITY];
+	private int[] corpDescription = new int[INITIAL_CAPACITY];
+	private int[] filterGroup = new int[INITIAL_CAPACITY];
+	private int[] zipCode = new int[INITIAL_CAPACITY];
+	private int[] nickname = new int[INITIAL_CAPACITY];
+	private int[] lineStatus = new int[INITIAL_CAPACITY];
+	private int[] rowStatus = new int[INITIAL_CAPACITY];
+	private String[] imei = new String[INITIAL_CAPACITY];
+	private String[] iccid = new String[INITIAL_CAPACITY];
+	private String[] mdn = new String[INITIAL_CAPACITY];
+	private String[] ip = new String[INITIAL_CAPACITY];
+
+	/**
+	 * Registers a transaction, returning its index. Fields are only recorded the first time an id is seen.
+	 */
+	public int addTransaction(String transactionId, String status, String timestamp, int total, int success,
+			int failed) {
+		Integer existing = transactionIndexes.get(transactionId);
+		if (existing != null) {
+			return existing;
+		}
+		int index = transactionIds.size();
+		if (index == totalLines.length) {
+			int capacity = index * 2;
+			transactionStatus = Arrays.copyOf(transactionStatus, capacity);
+			transactionTimestamp = Arrays.copyOf(transactionTimestamp, capacity);
+			totalLines = Arrays.copyOf(totalLines, capacity);
+			successLines = Arrays.copyOf(successLines, capacity);
+			failedLines = Arrays.copyOf(failedLines, capacity);
+		}
+		transactionIds.add(transactionId);
+		transactionIndexes.put(transactionId, index);
+		transactionStatus[index] = encode(status);
+		transactionTimestamp[index] = encode(timestamp);
+		totalLines[index] = total;
+		successLines[index] = success;
+		failedLines[index] = failed;
+		return index;
+	}
+
+	public void addLine(int transactionIndex, String carrier, String corpId, String corpDescription,
+			String filterGroup, String zipCode, String imei, String iccid, String mdn, String nickname, String ip,
+			String lineStatus) {
+		if (lineCount == lineTransaction.length) {
+			grow(lineCount * 2);
+		}
+		int i = lineCount++;
+		this.lineTransaction[i] = transactionIndex;
+		this.carrier[i] = encode(carrier);
+		this.corpId[i] = encode(corpId);
+		this.corpDescription[i] = encode(corpDescription);
+		this.filterGroup[i] = encode(filterGroup);
+		this.zipCode[i] = encode(zipCode);
+		this.nickname[i] = encode(nickname);
+		this.lineStatus[i] = encode(lineStatus);
+		this.rowStatus[i] = -1;
+		this.imei[i] = imei;
+		this.iccid[i] = iccid;
+		this.mdn[i] = mdn;
+		this.ip[i] = ip;
+	}
+
+	/**
+	 * Adds a line from a detail query that reports status per row and has no separate line status. The
+	 * row's status is returned as its transaction status, as the row-per-DTO mapping does.
+	 */
+	public void addDetailLine(int transactionIndex, String status, String carrier, String corpId,
+			String corpDescription, String filterGroup, String zipCode, String imei, String iccid, String mdn,
+			String nickname, String ip) {
+		addLine(transactionIndex, carrier, corpId, corpDescription, filterGroup, zipCode, imei, iccid, mdn, nickname,
+				ip, null);
+		rowStatus[lineCount - 1] = encode(status);
+	}
+
+	public int size() {
+		return lineCount;
+	}
+
+	public int getTransactionCount() {
+		return transactionIds.size();
+	}
+
+	/**
+	 * Returns a view positioned at the given line. Views are cheap, but {@link #iterator()} reuses a single
+	 * one, so copy values out rather than keeping the reference.
+	 */
+	public Line getLine(int index) {
+		if (index < 0 || index >= lineCount) {
+			throw new IndexOutOfBoundsException("Line " + index + " of " + lineCount);
+		}
+		Line line = new Line();
+		line.index = index;
+		return line;
+	}
+
+	@Override
+	public Iterator<Line> iterator() {
+		return new Iterator<Line>() {
+			private final Line line = new Line();
+			private int next;
+
+			@Override
+			public boolean hasNext() {
+				return next < lineCount;
+			}
+
+			@Override
+			public Line next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				line.index = next++;
+				return line;
+			}
+		};
+	}
+
+	/**
+	 * Materializes the given line as a DTO, for callers that still need the row-per-object shape.
+	 */
+	public ActivationTransactionDTO toTransactionDTO(int index) {
+		Line line = getLine(index);
+		ActivationTransactionDTO activationTransactionDTO = new ActivationTransactionDTO();
+		activationTransactionDTO.setTransactionId(line.getTransactionId());
+		activationTransactionDTO.setTotalLines(line.getTotalLines());
+		activationTransactionDTO.setSuccessLines(line.getSuccessLines());
+		activationTransactionDTO.setFailedLines(line.getFailedLines());
+		activationTransactionDTO.setStatus(line.getTransactionStatus());
+		activationTransactionDTO.setTransactionStartTimestamp(line.getTransactionTimestamp());
+		activationTransactionDTO.setCarrier(line.getCarrier());
+		activationTransactionDTO.setCorpId(line.getCorpId());
+		activationTransactionDTO.setCorpDescription(line.getCorpDescription());
+		activationTransactionDTO.setFilterGroup(line.getFilterGroup());
+		activationTransactionDTO.setZipCode(line.getZipCode());
+		activationTransactionDTO.setImei(line.getImei());
+		activationTransactionDTO.setIccid(line.getIccid());
+		activationTransactionDTO.setMdn(line.getMdn());
+		activationTransactionDTO.setNickname(line.getNickname());
+		activationTransactionDTO.setIp(line.getIp());
+		activationTransactionDTO.setLineActivationStatus(line.getLineActivationStatus());
+		return activationTransactionDTO;
+	}
+
+	private int encode(String value) {
+		if (value == null) {
+			return -1;
+		}
+		Integer code = dictionaryCodes.get(value);
+		if (code == null) {
+			code = dictionary.size();
+			dictionary.add(value);
+			dictionaryCodes.put(value, code);
+		}
+		return code;
+	}
+
+	private String decode(int code) {
+		return code < 0 ? null : dictionary.get(code);
+	}
+
+	private void grow(int capacity) {
+		lineTransaction = Arrays.copyOf(lineTransaction, capacity);
+		carrier = Arrays.copyOf(carrier, capacity);
+		corpId = Arrays.copyOf(corpId, capacity);
+		corpDescription = Arrays.copyOf(corpDescription, capacity);
+		filterGroup = Arrays.copyOf(filterGroup, capacity);
+		zipCode = Arrays.copyOf(zipCode, capacity);
+		nickname = Arrays.copyOf(nickname, capacity);
+		lineStatus = Arrays.copyOf(lineStatus, capacity);
+		rowStatus = Arrays.copyOf(rowStatus, capacity);
+		imei = Arrays.copyOf(imei, capacity);
+		iccid = Arrays.copyOf(iccid, capacity);
+		mdn = Arrays.copyOf(mdn, capacity);
+		ip = Arrays.copyOf(ip, capacity);
+	}
+
+	/**
+	 * Read-only view of one line and its transaction.
+	 */
+	public final class Line {
+
+		private int index;
+
+		private Line() {
+		}
+
+		public String getTransactionId() {
+			return transactionIds.get(lineTransaction[index]);
+		}
+
+		public String getTransactionStatus() {
+			return decode(rowStatus[index] >= 0 ? rowStatus[index] : transactionStatus[lineTransaction[index]]);
+		}
+
+		public String getTransactionTimestamp() {
+			return decode(transactionTimestamp[lineTransaction[index]]);
+		}
+
+		public int getTotalLines() {
+			return totalLines[lineTransaction[index]];
+		}
+
+		public int getSuccessLines() {
+			return successLines[lineTransaction[index]];
+		}
+
+		public int getFailedLines() {
+			return failedLines[lineTransaction[index]];
+		}
+
+		public String getCarrier() {
+			return decode(carrier[index]);
+		}
+
+		public String getCorpId() {
+			return decode(corpId[index]);
+		}
+
+		public String getCorpDescription() {
+			return decode(corpDescription[index]);
+		}
+
+		public String getFilterGroup() {
+			return decode(filterGroup[index]);
+		}
+
+		public String getZipCode() {
+			return decode(zipCode[index]);
+		}
+
+		public String getImei() {
+			return imei[index];
+		}
+
+		public String getIccid() {
+			return iccid[index];
+		}
+
+		public String getMdn() {
+			return mdn[index];
+		}
+
+		public String getNickname() {
+			return decode(nickname[index]);
+		}
+
+		public String getIp() {
+			return ip[index];
+		}
+
+		public String getLineActivationStatus() {
+			return decode(lineStatus[index]);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.kajeet.sentinel.activation.model;
+
+/**
+ * Sync position for the activation history delta API. Transactions are ordered by (date entered,
+ * set_transaction_id); everything after {@code enteredAt}/{@code transactionId} is new. {@code openSince} is
+ * the entry date of the oldest transaction that still had pending lines; transactions from that point on are
+ * sent again so their line status changes are picked up. That re-send is paged like new transactions:
+ * {@code openAfterEnteredAt}/{@code openAfterTransactionId} is where the current pass over the open range
+ * continues, and {@code pendingSince} collects the oldest pending entry date seen during the pass, which
+ * becomes {@code openSince} once the pass completes.
+ */
+public class ActivationHistoryWatermark {
+
+	private long enteredAt;
+	private String transactionId;
+	private Long openSince;
+	private Long openAfterEnteredAt;
+	private String openAfterTransactionId;
+	private Long pendingSince;
+
+	public ActivationHistoryWatermark() {
+	}
+
+	public ActivationHistoryWatermark(long enteredAt, String transactionId, Long openSince) {
+		this.enteredAt = enteredAt;
+		this.transactionId = transactionId;
+		this.openSince = openSince;
+	}
+
+	public long getEnteredAt() {
+		return enteredAt;
+	}
+
+	public void setEnteredAt(long enteredAt) {
+		this.enteredAt = enteredAt;
+	}
+
+	public String getTransactionId() {
+		return transactionId;
+	}
+
+	public void setTransactionId(String transactionId) {
+		this.transactionId = transactionId;
+	}
+
+	public Long getOpenSince() {
+		return openSince;
+	}
+
+	public void setOpenSince(Long openSince) {
+		this.openSince = openSince;
+	}
+
+	public Long getOpenAfterEnteredAt() {
+		return openAfterEnteredAt;
+	}
+
+	public void setOpenAfterEnteredAt(Long openAfterEnteredAt) {
+		this.openAfterEnteredAt = openAfterEnteredAt;
+	}
+
+	public String getOpenAfterTransactionId() {
+		return openAfterTransactionId;
+	}
+
+	public void setOpenAfterTransactionId(String openAfterTransactionId) {
+		this.openAfterTransactionId = openAfterTransactionId;
+	}
+
+	public Long getPendingSince() {
+		return pendingSince;
+	}
+
+	public void setPendingSince(Long pendingSince) {
+		this.pendingSince = pendingSince;
+	}
+}
@@ -0,0 +1,171 @@
+package com.kajeet.sentinel.activation.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kajeet.sentinel.exception.UnprocessableEntityException;
+
+/**
+ * Makes activation submissions idempotent. A submission is keyed by the client's Idempotency-Key header when
+ * one is sent, otherwise by a hash of the whole request. A duplicate that arrives while the first submission is
+ * running waits for it, and one that arrives within the retention window gets the first result back without
+ * running again. Failed or unsuccessful submissions are not retained, so the client can retry them.
+ * Keys are scoped to the submission type, corp and user, so another user's identical upload still runs
+ * through its own access checks. A client key is bound to a hash of the request it first
+ * came with, and reusing it with a different request within the retention window is rejected with 422.
+ */
+@Component
+public class ActivationIdempotency {
+
+	private static final Logger log = LoggerFactory.getLogger(ActivationIdempotency.class);
+
+	public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+	private static final char SEPARATOR = '\u001f';
+
+	private final boolean enabled;
+	private final long retentionMillis;
+	private final SingleFlight<String, Object> submissions = new SingleFlight<>();
+	private final ConcurrentMap<String, PayloadBinding> clientKeyPayloads = new ConcurrentHashMap<>();
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	public ActivationIdempotency(@Value("${activation.idempotency.enabled:true}") boolean enabled,
+			@Value("${activation.idempotency.retentionMillis:600000}") long retentionMillis) {
+		this.enabled = enabled;
+		this.retentionMillis = retentionMillis;
+	}
+
+	/**
+	 * Builds the key for a submission. The request is hashed as a whole, so any field that changes what is
+	 * sent to the procedure (filter group, zip code, location, plan) makes a different submission. Must be
+	 * called before the submit path mutates the request.
+	 */
+	String keyFor(String type, String corpId, String userName, Object request) {
+		StringBuilder key = new StringBuilder(type).append(SEPARATOR).append(corpId).append(SEPARATOR).append(userName)
+				.append(SEPARATOR);
+		String requestHash = sha256(mapper.valueToTree(request).toString());
+		String clientKey = getClientKey();
+		if (clientKey != null) {
+			String submissionKey = key.append("client").append(SEPARATOR).append(clientKey).toString();
+			if (enabled) {
+				bindPayload(submissionKey, requestHash);
+			}
+			return submissionKey;
+		}
+		return key.append("content").append(SEPARATOR).append(requestHash).toString();
+	}
+
+	/**
+	 * Key for one part of a submission, such as one carrier of a multi-carrier upload. Parts are retained on
+	 * their own, so retrying a partly failed submission with the same key only reruns the parts that failed.
+	 */
+	String partKey(String key, String part) {
+		return key + SEPARATOR + part;
+	}
+
+	/**
+	 * Runs the submission unless an identical one is running or was retained, in which case its result is
+	 * returned instead.
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T execute(String key, Supplier<T> submission, Predicate<T> successful) {
+		if (!enabled) {
+			return submission.get();
+		}
+		boolean[] ran = new boolean[1];
+		T result = (T) submissions.execute(key, retentionMillis, () -> {
+			ran[0] = true;
+			return submission.get();
+		}, value -> successful.test((T) value));
+		if (!ran[0]) {
+			log.info("Duplicate activation submission {}, returning the first result", key);
+		}
+		return result;
+	}
+
+	@Scheduled(fixedDelayString = "${activation.idempotency.purgeMillis:60000}")
+	public void purgeExpired() {
+		submissions.purgeExpired();
+		long now = System.currentTimeMillis();
+		clientKeyPayloads.values().removeIf(binding -> binding.isExpired(now));
+	}
+
+	int getRetainedCount() {
+		return submissions.size();
+	}
+
+	int getBoundClientKeyCount() {
+		return clientKeyPayloads.size();
+	}
+
+	/**
+	 * Binds a client key to the request hash it first arrived with. Each matching reuse extends the binding
+	 * by the retention window.
+	 */
+	private void bindPayload(String submissionKey, String payloadHash) {
+		long now = System.currentTimeMillis();
+		PayloadBinding binding = clientKeyPayloads.compute(submissionKey, (k, existing) ->
+				existing == null || existing.isExpired(now) || existing.payloadHash.equals(payloadHash)
+						? new PayloadBinding(payloadHash, now + retentionMillis) : existing);
+		if (!binding.payloadHash.equals(payloadHash)) {
+			log.warn("Idempotency key {} reused with a different request", submissionKey);
+			throw new UnprocessableEntityException(
+					"Idempotency-Key was already used with a different request. Please use a new key.");
+		}
+	}
+
+	private static String getClientKey() {
+		RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+		if (!(requestAttributes instanceof ServletRequestAttributes)) {
+			return null;
+		}
+		HttpServletRequest request = ((ServletRequestAttributes) requestAttributes).getRequest();
+		return StringUtils.trimToNull(request.getHeader(IDEMPOTENCY_KEY_HEADER));
+	}
+
+	private static String sha256(String content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+	}
+
+	private static final class PayloadBinding {
+
+		private final String payloadHash;
+		private final long expiresAt;
+
+		PayloadBinding(String payloadHash, long expiresAt) {
+			this.payloadHash = payloadHash;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpired(long now) {
+			return now >= expiresAt;
+		}
+	}
+}
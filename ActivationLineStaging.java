@@ -0,0 +1,120 @@
+package com.kajeet.sentinel.activation.dao.impl;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import com.kajeet.sentinel.activation.model.ActivationDetailsDto;
+
+/**
+ * Column layout of the activation line staging table. Staged submissions bind {@link ActivationDetailsDto}
+ * fields straight into these columns, so the lines are never serialized to JSON and parsed again by the
+ * procedure. Expected table:
+ *
+ * <pre>
+ * CREATE TABLE activation_line_staging (staging_set_id NUMBER NOT NULL, line_no NUMBER NOT NULL,
+ *     iccid VARCHAR2(30), imei VARCHAR2(30), ... one VARCHAR2 column per entry in COLUMNS ...,
+ *     CONSTRAINT activation_line_staging_pk PRIMARY KEY (staging_set_id, line_no))
+ * CREATE SEQUENCE activation_staging_set_seq
+ * </pre>
+ *
+ * The staged procedure (activation.procedure.&lt;procedure_name&gt;.stagedProcedure) must read every row of
+ * its staging set before it returns, copying whatever later processing needs into its own tables. It must not
+ * hand the staging set id to a scheduler job, queue or other asynchronous work, because the rows are deleted
+ * as soon as the call returns.
+ */
+final class ActivationLineStaging {
+
+	static final String TABLE = "activation_line_staging";
+	static final String SEQUENCE = "activation_staging_set_seq";
+
+	private static final List<Column> COLUMNS = Arrays.asList(
+			new Column("iccid", ActivationDetailsDto::getIccid),
+			new Column("imei", ActivationDetailsDto::getImei),
+			new Column("imei_item_id", ActivationDetailsDto::getImeiItemId),
+			new Column("filter_group", ActivationDetailsDto::getFilterGroup),
+			new Column("device_group", ActivationDetailsDto::getDeviceGroup),
+			new Column("nickname", ActivationDetailsDto::getNickname),
+			new Column("carrier", ActivationDetailsDto::getCarrier),
+			new Column("network", ActivationDetailsDto::getNetwork),
+			new Column("plan_id", ActivationDetailsDto::getPlanId),
+			new Column("wh_plan_id", ActivationDetailsDto::getWhPlanId),
+			new Column("bss_rate_plan_id", ActivationDetailsDto::getBssRatePlanId),
+			new Column("carrier_account_no", ActivationDetailsDto::getCarrierAccountNo),
+			new Column("carrier_account_id", ActivationDetailsDto::getCarrierAccountId),
+			new Column("carrier_ip_pool", ActivationDetailsDto::getCarrierIpPool),
+			new Column("zip_code", ActivationDetailsDto::getZipCode),
+			new Column("sku_number", ActivationDetailsDto::getSkuNumber),
+			new Column("sub_type", ActivationDetailsDto::getSubType),
+			new Column("lead_id", ActivationDetailsDto::getLeadId),
+			new Column("agency_end_user_name", ActivationDetailsDto::getAgencyEndUserName),
+			new Column("billing_address", ActivationDetailsDto::getBillingAddress),
+			new Column("billing_city", ActivationDetailsDto::getBillingCity),
+			new Column("billing_state", ActivationDetailsDto::getBillingState),
+			new Column("attfn_address", ActivationDetailsDto::getAttFirstNet_Address),
+			new Column("attfn_agency_end_user_name", ActivationDetailsDto::getAttFirstNet_AgencyEndUserName),
+			new Column("attfn_city", ActivationDetailsDto::getAttFirstNet_City),
+			new Column("attfn_state", ActivationDetailsDto::getAttFirstNet_State),
+			new Column("attfn_zip_code", ActivationDetailsDto::getAttFirstNet_Zipcode),
+			new Column("attfn_sub_type", ActivationDetailsDto::getAttFirstNet_SubType),
+			new Column("attfn_communication_plan_id", ActivationDetailsDto::getAttFirstNet_communication_plan_id),
+			new Column("attfn_netsweeper_group_id", ActivationDetailsDto::getAttFirstNet_netsweeper_group_id));
+
+	private static final int[] ARG_TYPES = argTypes();
+
+	private ActivationLineStaging() {
+	}
+
+	static String insertSql(String dbUser) {
+		StringBuilder columns = new StringBuilder("staging_set_id, line_no");
+		StringBuilder values = new StringBuilder("?, ?");
+		for (Column column : COLUMNS) {
+			columns.append(", ").append(column.name);
+			values.append(", ?");
+		}
+		return "INSERT INTO " + dbUser + "." + TABLE + " (" + columns + ") VALUES (" + values + ")";
+	}
+
+	static int[] getArgTypes() {
+		return ARG_TYPES;
+	}
+
+	/**
+	 * One bind row per line, in {@link #insertSql(String)} column order. Lines are numbered from 1.
+	 */
+	static List<Object[]> toBatchArgs(long stagingSetId, List<ActivationDetailsDto> activationLines) {
+		List<Object[]> batchArgs = new ArrayList<>(activationLines.size());
+		int lineNo = 0;
+		for (ActivationDetailsDto activationLine : activationLines) {
+			Object[] args = new Object[COLUMNS.size() + 2];
+			args[0] = stagingSetId;
+			args[1] = ++lineNo;
+			for (int i = 0; i < COLUMNS.size(); i++) {
+				args[i + 2] = COLUMNS.get(i).getter.apply(activationLine);
+			}
+			batchArgs.add(args);
+		}
+		return batchArgs;
+	}
+
+	private static int[] argTypes() {
+		int[] argTypes = new int[COLUMNS.size() + 2];
+		Arrays.fill(argTypes, Types.VARCHAR);
+		argTypes[0] = Types.NUMERIC;
+		argTypes[1] = Types.NUMERIC;
+		return argTypes;
+	}
+
+	private static final class Column {
+
+		private final String name;
+		private final Function<ActivationDetailsDto, Object> getter;
+
+		Column(String name, Function<ActivationDetailsDto, Object> getter) {
+			this.name = name;
+			this.getter = getter;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.kajeet.sentinel.activation.service.impl;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kajeet.sentinel.auth.model.SentinelPrincipal;
+import com.kajeet.sentinel.devicegroup.HierarchyManager;
+import com.kajeet.sentinel.devicegroup.model.CorpSettings;
+import com.kajeet.sentinel.devicegroup.model.Organization;
+import com.kajeet.sentinel.profile.service.CorpManager;
+import com.kajeet.sentinel.user.model.User;
+
+/**
+ * Memoizing view over the {@link HierarchyManager} and {@link CorpManager} lookups, the user record and the
+ * user's web filtering groups needed while handling a single activation request. Each (method, key) pair is
+ * resolved at most once.
+ * Not thread safe: create one per request and drop it when the request completes.
+ */
+class ActivationLookupCache {
+
+	private static final Logger log = LoggerFactory.getLogger(ActivationLookupCache.class);
+
+	private final HierarchyManager hierarchyManager;
+	private final CorpManager corpManager;
+	private final Function<SentinelPrincipal, User> userLoader;
+	private final Function<String, Collection<String>> webFilteringGroupLoader;
+
+	private final Map<String, String> businessTypes = new HashMap<>();
+	private final Map<String, Organization> topLevelOrganizations = new HashMap<>();
+	private final Map<String, CorpSettings> corpSettings = new HashMap<>();
+	private final Map<String, User> users = new HashMap<>();
+	private final Map<String, Collection<String>> webFilteringGroups = new HashMap<>();
+
+	private int hits;
+	private int misses;
+
+	ActivationLookupCache(HierarchyManager hierarchyManager, CorpManager corpManager,
+			Function<SentinelPrincipal, User> userLoader, Function<String, Collection<String>> webFilteringGroupLoader) {
+		this.hierarchyManager = hierarchyManager;
+		this.corpManager = corpManager;
+		this.userLoader = userLoader;
+		this.webFilteringGroupLoader = webFilteringGroupLoader;
+	}
+
+	String getBusinessTypeByCorpId(String corpId) {
+		return lookup(businessTypes, corpId, hierarchyManager::getBusinessTypeByCorpId);
+	}
+
+	Organization getTopLevelOrganization(String corpId) {
+		return lookup(topLevelOrganizations, corpId, hierarchyManager::getTopLevelOrganization);
+	}
+
+	CorpSettings getCorpSetting(String corpId) {
+		return lookup(corpSettings, corpId, corpManager::getCorpSetting);
+	}
+
+	User getUser(SentinelPrincipal principal) {
+		return lookup(users, principal.getName(), name -> userLoader.apply(principal));
+	}
+
+	Collection<String> getWebFilteringGroups(String userName) {
+		return lookup(webFilteringGroups, userName, webFilteringGroupLoader);
+	}
+
+	int getHits() {
+		return hits;
+	}
+
+	int getMisses() {
+		return misses;
+	}
+
+	void logStats(String corpId) {
+		log.info("Activation lookups for corpId: {} resolved with {} cache hits and {} misses", corpId, hits, misses);
+	}
+
+	private <T> T lookup(Map<String, T> cache, String key, Function<String, T> loader) {
+		if (cache.containsKey(key)) {
+			hits++;
+			return cache.get(key);
+		}
+		misses++;
+		T value = loader.apply(key);
+		cache.put(key, value);
+		return value;
+	}
+}
@@ -0,0 +1,200 @@
+package com.kajeet.sentinel.activation.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Micrometer meters for the activation pipeline, published through the actuator metrics endpoint. Meters
+ * are registered once and cached, so recording on the submit path is a map lookup and a nanoTime delta with
+ * no allocation once a meter exists. Only the procedure submit timer publishes a percentile histogram; the
+ * others publish count, total and max, which keeps the series count down.
+ */
+@Component
+public class ActivationMetrics {
+
+	public static final String PHASE_VALIDATION = "validation";
+	public static final String PHASE_LINE_VALIDATION = "line_validation";
+	public static final String PHASE_SERIALIZATION = "serialization";
+	public static final String PHASE_KEMP_ALLOCATION = "kemp_allocation";
+	public static final String PHASE_KEMP_ROLLBACK = "kemp_rollback";
+	public static final String PHASE_PROVISIONING_GATEWAY = "provisioning_gateway";
+
+	public static final String ADMISSION_ADMITTED = "admitted";
+	public static final String ADMISSION_QUEUE_FULL = "queue_full";
+	public static final String ADMISSION_TIMEOUT = "timeout";
+
+	public static final String DEPENDENCY_SUCCESS = "success";
+	public static final String DEPENDENCY_FAILURE = "failure";
+	public static final String DEPENDENCY_TIMEOUT = "timeout";
+	public static final String DEPENDENCY_REJECTED = "rejected";
+	public static final String DEPENDENCY_SHORT_CIRCUITED = "short_circuited";
+
+	private static final String RESULT_SUCCESS = "success";
+	private static final String RESULT_FAILURE = "failure";
+
+	private final MeterRegistry registry;
+	private final ConcurrentMap<String, Timer> phaseTimers = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Timer[]> queryTimers = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, DistributionSummary> lineCounts = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Timer> admissionTimers = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Timer> dependencyTimers = new ConcurrentHashMap<>();
+
+	public ActivationMetrics(MeterRegistry registry) {
+		this.registry = registry;
+		for (String phase : new String[] { PHASE_VALIDATION, PHASE_LINE_VALIDATION, PHASE_SERIALIZATION, PHASE_KEMP_ALLOCATION,
+				PHASE_KEMP_ROLLBACK, PHASE_PROVISIONING_GATEWAY }) {
+			phaseTimer(phase);
+		}
+	}
+
+	/**
+	 * Meters for one bulk_activate_* procedure. Hold on to the result rather than looking it up per call.
+	 */
+	public ProcedureMeters procedure(String carrier, String procedureName) {
+		return new ProcedureMeters(carrier, procedureName);
+	}
+
+	public void recordPhase(String phase, long startNanos) {
+		phaseTimer(phase).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Starts timing a phase that may end in several places. The first {@link Phase#end()} records it.
+	 */
+	public Phase startPhase(String phase) {
+		return new Phase(phaseTimer(phase));
+	}
+
+	public void recordQuery(String query, long startNanos, boolean success) {
+		Timer[] timers = queryTimers.get(query);
+		if (timers == null) {
+			timers = queryTimers.computeIfAbsent(query, name -> new Timer[] {
+					queryTimer(name, RESULT_SUCCESS), queryTimer(name, RESULT_FAILURE) });
+		}
+		timers[success ? 0 : 1].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void recordLineCount(String carrier, int lines) {
+		DistributionSummary summary = lineCounts.get(carrier);
+		if (summary == null) {
+			summary = lineCounts.computeIfAbsent(carrier, name -> DistributionSummary.builder("activation.request.lines")
+					.description("Lines per activation request").tag("carrier", name).baseUnit("lines").register(registry));
+		}
+		summary.record(lines);
+	}
+
+	/**
+	 * Records how long a submission waited for admission and whether it got in.
+	 */
+	public void recordAdmission(String outcome, long startNanos) {
+		Timer timer = admissionTimers.get(outcome);
+		if (timer == null) {
+			timer = admissionTimers.computeIfAbsent(outcome, name -> Timer.builder("activation.admission.wait")
+					.description("Time an activation submission waited for admission").tag("outcome", name).register(registry));
+		}
+		timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Publishes the circuit state (0 closed, 1 half open, 2 open) and active call count of a remote
+	 * dependency.
+	 */
+	public void registerDependency(String dependency, IntSupplier circuitState, IntSupplier activeCalls) {
+		Gauge.builder("activation.dependency.circuit.state", circuitState, IntSupplier::getAsInt)
+				.description("Circuit state of an activation dependency: 0 closed, 1 half open, 2 open")
+				.tag("dependency", dependency).strongReference(true).register(registry);
+		Gauge.builder("activation.dependency.active", activeCalls, IntSupplier::getAsInt)
+				.description("Calls in progress to an activation dependency").tag("dependency", dependency)
+				.strongReference(true).register(registry);
+	}
+
+	public void recordDependencyCall(String dependency, String outcome, long startNanos) {
+		String key = dependency + '|' + outcome;
+		Timer timer = dependencyTimers.get(key);
+		if (timer == null) {
+			timer = dependencyTimers.computeIfAbsent(key, name -> Timer.builder("activation.dependency.call")
+					.description("Activation dependency call time").tag("dependency", dependency)
+					.tag("outcome", outcome).register(registry));
+		}
+		timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+	}
+
+	private Timer phaseTimer(String phase) {
+		Timer timer = phaseTimers.get(phase);
+		if (timer != null) {
+			return timer;
+		}
+		return phaseTimers.computeIfAbsent(phase, name -> Timer.builder("activation.phase")
+				.description("Time spent in one activation submission phase").tag("phase", name).register(registry));
+	}
+
+	private Timer queryTimer(String query, String result) {
+		return Timer.builder("activation.query").description("Activation DAO query time").tag("query", query)
+				.tag("result", result).register(registry);
+	}
+
+	/**
+	 * Timers for a single procedure. The result_code tag is bucketed into a fixed set (0, error, exception)
+	 * whatever codes the procedure returns; the specific code is logged by the DAO.
+	 */
+	public final class ProcedureMeters {
+
+		private final String carrier;
+		private final String procedureName;
+		private final Timer successTimer;
+		private final Timer errorTimer;
+		private final Timer exceptionTimer;
+
+		private ProcedureMeters(String carrier, String procedureName) {
+			this.carrier = carrier;
+			this.procedureName = procedureName;
+			this.successTimer = timer("0");
+			this.errorTimer = timer("error");
+			this.exceptionTimer = timer("exception");
+		}
+
+		public void record(int resultCode, long startNanos) {
+			(resultCode == 0 ? successTimer : errorTimer).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+		}
+
+		public void recordException(long startNanos) {
+			exceptionTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+		}
+
+		private Timer timer(String resultCode) {
+			return Timer.builder("activation.procedure").description("bulk_activate_* procedure call time")
+					.tag("carrier", carrier).tag("procedure", procedureName).tag("result_code", resultCode)
+					.publishPercentileHistogram().register(registry);
+		}
+	}
+
+	/**
+	 * A running phase timing, recorded once.
+	 */
+	public static final class Phase {
+
+		private final Timer timer;
+		private final long startNanos = System.nanoTime();
+		private boolean ended;
+
+		private Phase(Timer timer) {
+			this.timer = timer;
+		}
+
+		public void end() {
+			if (!ended) {
+				ended = true;
+				timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.kajeet.sentinel.activation.dao.impl;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.core.simple.SimpleJdbcCall;
+
+import com.kajeet.sentinel.activation.metrics.ActivationMetrics;
+import com.kajeet.sentinel.exception.ServiceUnavailableException;
+import com.kajeet.sentinel.model.CatalystResult;
+
+/**
+ * A bulk_activate_* procedure call isolated behind its own concurrency limit and statement timeout, so one
+ * degraded carrier procedure cannot drain the shared connection pool. A maxConcurrent of zero or less leaves
+ * the call unlimited. When limited, a caller over the limit waits up to acquireTimeoutMillis for a permit
+ * before being turned away with a 503.
+ */
+class ActivationProcedureCall {
+
+	private static final Logger log = LoggerFactory.getLogger(ActivationProcedureCall.class);
+
+	private final String procedureName;
+	private final SimpleJdbcCall simpleJdbcCall;
+	private final Semaphore permits;
+	private final int maxConcurrent;
+	private final long acquireTimeoutMillis;
+	private final ActivationMetrics.ProcedureMeters meters;
+
+	ActivationProcedureCall(DataSource dataSource, String schemaName, String procedureName, int maxConcurrent,
+			int queryTimeoutSeconds, long acquireTimeoutMillis, ActivationMetrics.ProcedureMeters meters) {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.setQueryTimeout(queryTimeoutSeconds);
+		this.procedureName = procedureName;
+		this.simpleJdbcCall = new SimpleJdbcCall(jdbcTemplate).withProcedureName(procedureName)
+				.withSchemaName(schemaName);
+		this.permits = maxConcurrent > 0 ? new Semaphore(maxConcurrent, true) : null;
+		this.maxConcurrent = maxConcurrent;
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+		this.meters = meters;
+	}
+
+	Map<String, Object> execute(SqlParameterSource params) {
+		if (!acquire()) {
+			log.warn("Rejecting {} call, all {} permits in use", procedureName, maxConcurrent);
+			throw new ServiceUnavailableException(
+					"Too many activations in progress for this carrier. Please try again shortly.");
+		}
+		long started = System.nanoTime();
+		try {
+			Map<String, Object> output = call(params);
+			meters.record(resultCode(output), started);
+			return output;
+		} catch (RuntimeException e) {
+			meters.recordException(started);
+			throw e;
+		} finally {
+			if (permits != null) {
+				permits.release();
+			}
+		}
+	}
+
+	/**
+	 * Runs the procedure once a permit is held. Overridden by the embedded load harness to call a stub.
+	 */
+	Map<String, Object> call(SqlParameterSource params) {
+		return simpleJdbcCall.execute(params);
+	}
+
+	static int resultCode(Map<String, Object> output) {
+		return ((BigDecimal) output.get(CatalystResult.P_RESULT_CODE)).intValue();
+	}
+
+	private boolean acquire() {
+		if (permits == null) {
+			return true;
+		}
+		try {
+			return permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	String getProcedureName() {
+		return procedureName;
+	}
+
+	SimpleJdbcCall getSimpleJdbcCall() {
+		return simpleJdbcCall;
+	}
+
+	/**
+	 * Calls holding a permit, or -1 when the procedure is not limited.
+	 */
+	int getActiveCalls() {
+		return permits == null ? -1 : maxConcurrent - permits.availablePermits();
+	}
+}
@@ -0,0 +1,217 @@
+package com.kajeet.sentinel.activation.service.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.kajeet.sentinel.activation.dao.ActivationDao;
+import com.kajeet.sentinel.activation.model.ActivationTransactionDTO;
+
+/**
+ * Pushes activation progress to subscribers over server-sent events. A single scheduled poller reads the
+ * counts of every watched set_transaction_id in batches and only sends an event when a transaction's counts
+ * or status changed. A transaction stops being watched once its pending count reaches zero, and a
+ * subscription completes once all of its transactions have.
+ */
+@Component
+public class ActivationProgressPublisher {
+
+	private static final Logger log = LoggerFactory.getLogger(ActivationProgressPublisher.class);
+
+	static final String PROGRESS_EVENT = "progress";
+
+	@Autowired
+	private ActivationDao activationDao;
+
+	@Value("${activation.progress.pollBatchSize:500}")
+	private int pollBatchSize;
+
+	@Value("${activation.progress.subscriptionTimeoutMillis:1800000}")
+	private long subscriptionTimeoutMillis;
+
+	private final ConcurrentMap<String, Watch> watches = new ConcurrentHashMap<>();
+
+	/**
+	 * Subscribes to the given transactions. Transactions outside the corp hierarchy are ignored. The current
+	 * state of each visible transaction is sent immediately.
+	 */
+	public SseEmitter subscribe(List<String> transactionIds, String corpId) {
+		SseEmitter emitter = new SseEmitter(subscriptionTimeoutMillis);
+		Subscription subscription = new Subscription(emitter);
+		emitter.onCompletion(() -> unsubscribe(subscription));
+		emitter.onTimeout(() -> unsubscribe(subscription));
+		emitter.onError(e -> unsubscribe(subscription));
+
+		List<ActivationTransactionDTO> initial = activationDao.getActivationProgress(transactionIds, corpId);
+		// all pending ids go in first, so finishing one while the others are being registered cannot complete
+		// the subscription early
+		for (ActivationTransactionDTO progress : initial) {
+			if (progress.getPendingLines() > 0) {
+				subscription.remaining.add(progress.getTransactionId());
+			}
+		}
+		for (ActivationTransactionDTO progress : initial) {
+			if (!subscription.send(progress)) {
+				return emitter;
+			}
+		}
+		for (ActivationTransactionDTO progress : initial) {
+			if (progress.getPendingLines() > 0) {
+				watch(subscription, progress, corpId);
+			}
+		}
+		if (subscription.remaining.isEmpty()) {
+			subscription.complete();
+		}
+		return emitter;
+	}
+
+	/**
+	 * Adds the subscription to the transaction's watch. The poller may remove the watch as finished and
+	 * publish to a snapshot of its subscribers while this runs, so the subscription is only left on a watch
+	 * that is still registered; otherwise the transaction is read again and its final state sent directly.
+	 */
+	private void watch(Subscription subscription, ActivationTransactionDTO progress, String corpId) {
+		String transactionId = progress.getTransactionId();
+		ActivationTransactionDTO latest = progress;
+		while (true) {
+			ActivationTransactionDTO initial = latest;
+			Watch watch = watches.computeIfAbsent(transactionId, id -> new Watch(initial));
+			watch.subscriptions.add(subscription);
+			if (watches.get(transactionId) == watch) {
+				return;
+			}
+			watch.subscriptions.remove(subscription);
+			List<ActivationTransactionDTO> current = activationDao.getActivationProgress(
+					Collections.singletonList(transactionId), corpId);
+			if (current.isEmpty() || current.get(0).getPendingLines() <= 0) {
+				if (subscription.remaining.remove(transactionId)) {
+					subscription.finish(current.isEmpty() ? null : current.get(0));
+				}
+				return;
+			}
+			latest = current.get(0);
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${activation.progress.pollMillis:5000}")
+	public void poll() {
+		if (watches.isEmpty()) {
+			return;
+		}
+		List<String> transactionIds = new ArrayList<>(watches.keySet());
+		for (int from = 0; from < transactionIds.size(); from += pollBatchSize) {
+			List<String> batch = transactionIds.subList(from, Math.min(from + pollBatchSize, transactionIds.size()));
+			for (ActivationTransactionDTO progress : activationDao.getActivationProgress(batch)) {
+				publish(progress);
+			}
+		}
+	}
+
+	int getWatchedTransactionCount() {
+		return watches.size();
+	}
+
+	private void publish(ActivationTransactionDTO progress) {
+		String transactionId = progress.getTransactionId();
+		Watch watch = watches.get(transactionId);
+		if (watch == null || !watch.changed(progress)) {
+			return;
+		}
+		boolean finished = progress.getPendingLines() <= 0;
+		if (finished) {
+			watches.remove(transactionId, watch);
+		}
+		for (Subscription subscription : watch.subscriptions) {
+			if (!finished) {
+				subscription.send(progress);
+			} else if (subscription.remaining.remove(transactionId)) {
+				// whoever removes the id delivers the final state, so it is sent once
+				subscription.finish(progress);
+			}
+		}
+	}
+
+	private void unsubscribe(Subscription subscription) {
+		for (String transactionId : subscription.remaining) {
+			Watch watch = watches.get(transactionId);
+			if (watch != null) {
+				watch.subscriptions.remove(subscription);
+				if (watch.subscriptions.isEmpty()) {
+					watches.remove(transactionId, watch);
+				}
+			}
+		}
+	}
+
+	private static final class Watch {
+
+		private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+		private ActivationTransactionDTO last;
+
+		Watch(ActivationTransactionDTO initial) {
+			this.last = initial;
+		}
+
+		synchronized boolean changed(ActivationTransactionDTO progress) {
+			boolean changed = !Objects.equals(last.getSuccessLines(), progress.getSuccessLines())
+					|| !Objects.equals(last.getFailedLines(), progress.getFailedLines())
+					|| !Objects.equals(last.getPendingLines(), progress.getPendingLines())
+					|| !Objects.equals(last.getStatus(), progress.getStatus());
+			last = progress;
+			return changed;
+		}
+	}
+
+	private static final class Subscription {
+
+		private final SseEmitter emitter;
+		private final Set<String> remaining = ConcurrentHashMap.newKeySet();
+		private final AtomicBoolean completed = new AtomicBoolean();
+
+		Subscription(SseEmitter emitter) {
+			this.emitter = emitter;
+		}
+
+		boolean send(ActivationTransactionDTO progress) {
+			try {
+				emitter.send(SseEmitter.event().name(PROGRESS_EVENT).id(progress.getTransactionId()).data(progress));
+				return true;
+			} catch (IOException | IllegalStateException e) {
+				log.debug("Dropping activation progress subscriber", e);
+				emitter.completeWithError(e);
+				return false;
+			}
+		}
+
+		/**
+		 * Sends a transaction's final state, if any, and completes once no transactions remain.
+		 */
+		void finish(ActivationTransactionDTO progress) {
+			if ((progress == null || send(progress)) && remaining.isEmpty()) {
+				complete();
+			}
+		}
+
+		void complete() {
+			if (completed.compareAndSet(false, true)) {
+				emitter.complete();
+			}
+		}
+	}
+}
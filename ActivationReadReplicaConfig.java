@@ -0,0 +1,56 @@
+package com.kajeet.sentinel.config;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Read-only pool for activation history and reference-data queries, configured under
+ * activation.read-replica.datasource.* (url, username, password, driver-class-name, and hikari.* for the pool).
+ * Declaring a second DataSource makes Boot's DataSourceAutoConfiguration back off, so the primary pool is
+ * declared here as well, from the usual spring.datasource.* properties, and marked {@link Primary} so every
+ * other DataSource and JdbcTemplate injection point keeps getting it.
+ */
+@Configuration
+@ConditionalOnProperty(name = "activation.readReplica.enabled", havingValue = "true")
+public class ActivationReadReplicaConfig {
+
+	public static final String READ_REPLICA_DATA_SOURCE = "activationReadReplicaDataSource";
+
+	private static final String READ_REPLICA_PROPERTIES = "activationReadReplicaDataSourceProperties";
+
+	@Bean
+	@Primary
+	@ConfigurationProperties(prefix = "spring.datasource")
+	public DataSourceProperties dataSourceProperties() {
+		return new DataSourceProperties();
+	}
+
+	@Bean
+	@Primary
+	@ConfigurationProperties(prefix = "spring.datasource.hikari")
+	public HikariDataSource dataSource(DataSourceProperties dataSourceProperties) {
+		return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+	}
+
+	@Bean(name = READ_REPLICA_PROPERTIES)
+	@ConfigurationProperties(prefix = "activation.read-replica.datasource")
+	public DataSourceProperties activationReadReplicaDataSourceProperties() {
+		return new DataSourceProperties();
+	}
+
+	@Bean(name = READ_REPLICA_DATA_SOURCE)
+	@ConfigurationProperties(prefix = "activation.read-replica.datasource.hikari")
+	public DataSource activationReadReplicaDataSource(
+			@Qualifier(READ_REPLICA_PROPERTIES) DataSourceProperties readReplicaProperties) {
+		return readReplicaProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+	}
+}
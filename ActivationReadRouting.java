@@ -0,0 +1,116 @@
+package com.kajeet.sentinel.activation.dao.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.kajeet.sentinel.config.ActivationReadReplicaConfig;
+
+/**
+ * Chooses the data source for activation reads. Queries go to the read replica when one is configured, and
+ * the bulk_activate_* procedures always stay on primary. After a submit the corp is pinned to primary for a
+ * short window so that it reads its own writes while the replica catches up. Reads that are not tied to a
+ * corp are reference data (inventory, carrier lists, bearer paths, plans), which submits never write, so they
+ * always go to the replica.
+ */
+@Component
+public class ActivationReadRouting {
+
+	private static final Logger log = LoggerFactory.getLogger(ActivationReadRouting.class);
+
+	private final NamedParameterJdbcTemplate primaryTemplate;
+	private final NamedParameterJdbcTemplate readOnlyTemplate;
+	private final NamedParameterJdbcTemplate primaryExportTemplate;
+	private final NamedParameterJdbcTemplate readOnlyExportTemplate;
+	private final long pinPrimaryMillis;
+	private final Map<String, Long> pinnedUntil = new ConcurrentHashMap<>();
+
+	public ActivationReadRouting(JdbcTemplate jdbcTemplate,
+			@Qualifier(ActivationReadReplicaConfig.READ_REPLICA_DATA_SOURCE) ObjectProvider<DataSource> readReplicaDataSource,
+			@Value("${activation.readReplica.pinPrimaryMillis:30000}") long pinPrimaryMillis,
+			@Value("${activation.export.fetchSize:1000}") int exportFetchSize) {
+		this.primaryTemplate = new NamedParameterJdbcTemplate(jdbcTemplate.getDataSource());
+		DataSource readReplica = readReplicaDataSource.getIfAvailable();
+		this.readOnlyTemplate = readReplica == null ? primaryTemplate : new NamedParameterJdbcTemplate(readReplica);
+		this.primaryExportTemplate = withFetchSize(jdbcTemplate.getDataSource(), exportFetchSize);
+		this.readOnlyExportTemplate = readReplica == null ? primaryExportTemplate
+				: withFetchSize(readReplica, exportFetchSize);
+		this.pinPrimaryMillis = pinPrimaryMillis;
+		log.info("Activation reads routed to {}", readReplica == null ? "primary" : "read replica");
+	}
+
+	/**
+	 * Template for a read on behalf of the given corp, or for reference data when corpId is null.
+	 */
+	public NamedParameterJdbcTemplate forRead(String corpId) {
+		if (corpId != null && isPinnedToPrimary(corpId)) {
+			return primaryTemplate;
+		}
+		return readOnlyTemplate;
+	}
+
+	/**
+	 * Like {@link #forRead(String)}, for streaming reads of many rows. These templates fetch
+	 * activation.export.fetchSize rows per round trip instead of the driver default (10 for Oracle).
+	 */
+	public NamedParameterJdbcTemplate forExport(String corpId) {
+		if (corpId != null && isPinnedToPrimary(corpId)) {
+			return primaryExportTemplate;
+		}
+		return readOnlyExportTemplate;
+	}
+
+	/**
+	 * Template for reads that must see just-submitted transactions of any corp, such as the progress poller.
+	 */
+	public NamedParameterJdbcTemplate forPrimaryRead() {
+		return primaryTemplate;
+	}
+
+	/**
+	 * Routes the corp's reads to primary for activation.readReplica.pinPrimaryMillis.
+	 */
+	public void pinToPrimary(String corpId) {
+		if (readOnlyTemplate != primaryTemplate && pinPrimaryMillis > 0) {
+			pinnedUntil.put(corpId, System.currentTimeMillis() + pinPrimaryMillis);
+		}
+	}
+
+	/**
+	 * Drops expired pins, which are otherwise only removed when the same corp reads again.
+	 */
+	@Scheduled(fixedDelayString = "${activation.readReplica.purgeMillis:60000}")
+	public void purgeExpiredPins() {
+		long now = System.currentTimeMillis();
+		pinnedUntil.values().removeIf(until -> until < now);
+	}
+
+	private static NamedParameterJdbcTemplate withFetchSize(DataSource dataSource, int fetchSize) {
+		JdbcTemplate template = new JdbcTemplate(dataSource);
+		template.setFetchSize(fetchSize);
+		return new NamedParameterJdbcTemplate(template);
+	}
+
+	boolean isPinnedToPrimary(String corpId) {
+		Long until = pinnedUntil.get(corpId);
+		if (until == null) {
+			return false;
+		}
+		if (until < System.currentTimeMillis()) {
+			pinnedUntil.remove(corpId, until);
+			return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,301 @@
+package com.kajeet.sentinel.activation.dao.impl;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import com.kajeet.sentinel.activation.model.ActivationHistoryTable;
+import com.kajeet.sentinel.activation.model.ActivationHistoryWatermark;
+import com.kajeet.sentinel.activation.model.ActivationInventoryInfo;
+import com.kajeet.sentinel.activation.model.ActivationTransactionDTO;
+import com.kajeet.sentinel.activation.model.ActivationVerizonBusinessPlan;
+import com.kajeet.sentinel.activation.model.CarrierBearerPath;
+
+/**
+ * Column-index row mappers for the {@link ActivationSqlRegistry} statements. Indexes follow the select list of
+ * each statement, so a change to a select list must be mirrored here.
+ */
+final class ActivationRowMappers {
+
+	static final RowMapper<ActivationInventoryInfo> INVENTORY = (resultSet, i) -> {
+		ActivationInventoryInfo activationInventoryInfo = new ActivationInventoryInfo();
+		activationInventoryInfo.setSku(resultSet.getString(1));
+		activationInventoryInfo.setPlanId(resultSet.getString(2));
+		return activationInventoryInfo;
+	};
+
+	static final RowMapper<ActivationInventoryInfo> INVENTORY_3RD_PARTY = (resultSet, i) -> {
+		ActivationInventoryInfo activationInventoryInfo = new ActivationInventoryInfo();
+		activationInventoryInfo.setSku(resultSet.getString(1));
+		activationInventoryInfo.setPlanId(resultSet.getString(2));
+		activationInventoryInfo.setEastIpPool(resultSet.getString(3));
+		activationInventoryInfo.setWestIpPool(resultSet.getString(4));
+		activationInventoryInfo.setEastCommunicationPlan(resultSet.getString(5));
+		activationInventoryInfo.setWestCommunicationPlan(resultSet.getString(6));
+		activationInventoryInfo.setSubType(resultSet.getString(7));
+		return activationInventoryInfo;
+	};
+
+	static final RowMapper<CarrierBearerPath> CARRIER_BEARER_PATH = (resultSet, i) -> {
+		CarrierBearerPath carrierBearerPath = new CarrierBearerPath();
+		carrierBearerPath.setCarrierName(resultSet.getString(1));
+		carrierBearerPath.setBearerPath(resultSet.getString(2));
+		return carrierBearerPath;
+	};
+
+	static final RowMapper<ActivationVerizonBusinessPlan> BUSINESS_INTERNET_PLAN = (resultSet, i) -> {
+		ActivationVerizonBusinessPlan activationVerizonBusinessPlan = new ActivationVerizonBusinessPlan();
+		activationVerizonBusinessPlan.setPlanId(resultSet.getString(1));
+		activationVerizonBusinessPlan.setPlanDescriptionFull(resultSet.getString(2));
+		activationVerizonBusinessPlan.setPlanDescription(resultSet.getString(3));
+		activationVerizonBusinessPlan.setWhPlanId(resultSet.getString(4));
+		activationVerizonBusinessPlan.setCarrier(resultSet.getString(5));
+		return activationVerizonBusinessPlan;
+	};
+
+	/**
+	 * TRANSACTION_HISTORY and RECENT_TRANSACTIONS share this select list.
+	 */
+	static final RowMapper<ActivationTransactionDTO> TRANSACTION_SUMMARY = (resultSet, i) -> {
+		ActivationTransactionDTO activationTransactionDTO = new ActivationTransactionDTO();
+		activationTransactionDTO.setTransactionId(resultSet.getString(1));
+		activationTransactionDTO.setTotalLines(resultSet.getInt(2));
+		activationTransactionDTO.setSuccessLines(resultSet.getInt(3));
+		activationTransactionDTO.setFailedLines(resultSet.getInt(4));
+		activationTransactionDTO.setPendingLines(resultSet.getInt(5));
+		activationTransactionDTO.setStatus(resultSet.getString(6));
+		activationTransactionDTO.setTransactionStartTimestamp(resultSet.getString(7));
+		return activationTransactionDTO;
+	};
+
+	static final RowMapper<ActivationTransactionDTO> HISTORY_DETAILS = new HistoryDetailsRowMapper(null);
+
+	static final RowMapper<ActivationTransactionDTO> TRANSACTION_DETAILS = new TransactionDetailsRowMapper(null);
+
+	private ActivationRowMappers() {
+	}
+
+	/**
+	 * Line-level history mapper that deduplicates carrier, status, corp description and filter group values.
+	 * Holds per-query state, so create one per query.
+	 */
+	static RowMapper<ActivationTransactionDTO> historyDetailsDeduplicating() {
+		return new HistoryDetailsRowMapper(new StringDeduplicator());
+	}
+
+	/**
+	 * Transaction detail mapper that deduplicates low-cardinality columns. Holds per-query state, so create
+	 * one per query.
+	 */
+	static RowMapper<ActivationTransactionDTO> transactionDetailsDeduplicating() {
+		return new TransactionDetailsRowMapper(new StringDeduplicator());
+	}
+
+	/**
+	 * Streams ALL_HISTORY_DETAILS rows into a columnar table instead of one DTO per row.
+	 */
+	static RowCallbackHandler historyDetailsInto(ActivationHistoryTable table) {
+		return resultSet -> {
+			int transaction = table.addTransaction(resultSet.getString(1), resultSet.getString(5),
+					resultSet.getString(6), resultSet.getInt(2), resultSet.getInt(3), resultSet.getInt(4));
+			table.addLine(transaction, resultSet.getString(7), resultSet.getString(8), resultSet.getString(9),
+					resultSet.getString(10), resultSet.getString(11), resultSet.getString(12), resultSet.getString(13),
+					resultSet.getString(14), resultSet.getString(15), resultSet.getString(16), resultSet.getString(17));
+		};
+	}
+
+	/**
+	 * Streams TRANSACTION_DETAILS rows into a columnar table. Fields map as in the TRANSACTION_DETAILS row
+	 * mapper: derived_status is the row's status, and the statement has no transaction counts or line status.
+	 */
+	static RowCallbackHandler transactionDetailsInto(ActivationHistoryTable table) {
+		return resultSet -> {
+			int transaction = table.addTransaction(resultSet.getString(1), null, resultSet.getString(7), 0, 0, 0);
+			table.addDetailLine(transaction, resultSet.getString(10), resultSet.getString(6), resultSet.getString(2),
+					resultSet.getString(3), resultSet.getString(5), resultSet.getString(4), resultSet.getString(8),
+					resultSet.getString(9), resultSet.getString(11), resultSet.getString(13), resultSet.getString(12));
+		};
+	}
+
+	/**
+	 * Streams HISTORY_DELTA rows into a columnar table and works out the next watermark from them. New and
+	 * re-sent open transactions are each capped at limit per sync.
+	 */
+	static HistoryDeltaRowHandler historyDeltaInto(ActivationHistoryTable table, ActivationHistoryWatermark after,
+			int limit) {
+		return new HistoryDeltaRowHandler(table, after, limit);
+	}
+
+	static final class HistoryDeltaRowHandler implements RowCallbackHandler {
+
+		private final RowCallbackHandler lines;
+		private final ActivationHistoryWatermark after;
+		private final int limit;
+		private final Set<String> seenTransactions = new HashSet<>();
+		private long lastEnteredAt;
+		private String lastTransactionId;
+		private Long lastOpenEnteredAt;
+		private String lastOpenTransactionId;
+		private Long pendingSince;
+		private int newTransactionCount;
+		private int openTransactionCount;
+
+		private HistoryDeltaRowHandler(ActivationHistoryTable table, ActivationHistoryWatermark after, int limit) {
+			this.lines = historyDetailsInto(table);
+			this.after = after;
+			this.limit = limit;
+			this.lastEnteredAt = after.getEnteredAt();
+			this.lastTransactionId = after.getTransactionId();
+			this.pendingSince = after.getPendingSince();
+		}
+
+		@Override
+		public void processRow(ResultSet resultSet) throws SQLException {
+			lines.processRow(resultSet);
+			String transactionId = resultSet.getString(1);
+			if (!seenTransactions.add(transactionId)) {
+				return;
+			}
+			long enteredAt = resultSet.getTimestamp(18).getTime();
+			if (resultSet.getInt(19) > 0 && (pendingSince == null || enteredAt < pendingSince)) {
+				pendingSince = enteredAt;
+			}
+			if (isAfter(enteredAt, transactionId, after.getEnteredAt(), after.getTransactionId())) {
+				newTransactionCount++;
+				if (isAfter(enteredAt, transactionId, lastEnteredAt, lastTransactionId)) {
+					lastEnteredAt = enteredAt;
+					lastTransactionId = transactionId;
+				}
+			} else {
+				// rows come in (date_entered, set_transaction_id) order, so the last open one is the cursor
+				openTransactionCount++;
+				lastOpenEnteredAt = enteredAt;
+				lastOpenTransactionId = transactionId;
+			}
+		}
+
+		ActivationHistoryWatermark nextWatermark() {
+			ActivationHistoryWatermark next = new ActivationHistoryWatermark(lastEnteredAt, lastTransactionId,
+					after.getOpenSince());
+			if (isOpenPassComplete()) {
+				next.setOpenSince(pendingSince);
+			} else {
+				next.setOpenAfterEnteredAt(lastOpenEnteredAt);
+				next.setOpenAfterTransactionId(lastOpenTransactionId);
+				next.setPendingSince(pendingSince);
+			}
+			return next;
+		}
+
+		boolean hasMore() {
+			return newTransactionCount >= limit || !isOpenPassComplete();
+		}
+
+		private boolean isOpenPassComplete() {
+			return after.getOpenSince() == null || openTransactionCount < limit;
+		}
+
+		private static boolean isAfter(long enteredAt, String transactionId, long otherEnteredAt, String otherTransactionId) {
+			if (enteredAt != otherEnteredAt) {
+				return enteredAt > otherEnteredAt;
+			}
+			return new BigDecimal(transactionId).compareTo(new BigDecimal(otherTransactionId)) > 0;
+		}
+	}
+
+	private static final class HistoryDetailsRowMapper implements RowMapper<ActivationTransactionDTO> {
+
+		private final StringDeduplicator strings;
+
+		HistoryDetailsRowMapper(StringDeduplicator strings) {
+			this.strings = strings;
+		}
+
+		@Override
+		public ActivationTransactionDTO mapRow(ResultSet resultSet, int i) throws SQLException {
+			ActivationTransactionDTO activationTransactionDTO = new ActivationTransactionDTO();
+			activationTransactionDTO.setTransactionId(dedupe(strings, resultSet.getString(1)));
+			activationTransactionDTO.setTotalLines(resultSet.getInt(2));
+			activationTransactionDTO.setSuccessLines(resultSet.getInt(3));
+			activationTransactionDTO.setFailedLines(resultSet.getInt(4));
+			activationTransactionDTO.setStatus(dedupe(strings, resultSet.getString(5)));
+			activationTransactionDTO.setTransactionStartTimestamp(dedupe(strings, resultSet.getString(6)));
+			activationTransactionDTO.setCarrier(dedupe(strings, resultSet.getString(7)));
+			activationTransactionDTO.setCorpId(dedupe(strings, resultSet.getString(8)));
+			activationTransactionDTO.setCorpDescription(dedupe(strings, resultSet.getString(9)));
+			activationTransactionDTO.setFilterGroup(dedupe(strings, resultSet.getString(10)));
+			activationTransactionDTO.setZipCode(dedupe(strings, resultSet.getString(11)));
+			activationTransactionDTO.setImei(resultSet.getString(12));
+			activationTransactionDTO.setIccid(resultSet.getString(13));
+			activationTransactionDTO.setMdn(resultSet.getString(14));
+			activationTransactionDTO.setNickname(dedupe(strings, resultSet.getString(15)));
+			activationTransactionDTO.setIp(resultSet.getString(16));
+			activationTransactionDTO.setLineActivationStatus(dedupe(strings, resultSet.getString(17)));
+			return activationTransactionDTO;
+		}
+	}
+
+	private static final class TransactionDetailsRowMapper implements RowMapper<ActivationTransactionDTO> {
+
+		private final StringDeduplicator strings;
+
+		TransactionDetailsRowMapper(StringDeduplicator strings) {
+			this.strings = strings;
+		}
+
+		@Override
+		public ActivationTransactionDTO mapRow(ResultSet resultSet, int i) throws SQLException {
+			ActivationTransactionDTO activationTransactionDTO = new ActivationTransactionDTO();
+			activationTransactionDTO.setTransactionId(dedupe(strings, resultSet.getString(1)));
+			activationTransactionDTO.setCorpId(dedupe(strings, resultSet.getString(2)));
+			activationTransactionDTO.setCorpDescription(dedupe(strings, resultSet.getString(3)));
+			activationTransactionDTO.setZipCode(dedupe(strings, resultSet.getString(4)));
+			activationTransactionDTO.setFilterGroup(dedupe(strings, resultSet.getString(5)));
+			activationTransactionDTO.setCarrier(dedupe(strings, resultSet.getString(6)));
+			activationTransactionDTO.setTransactionStartTimestamp(dedupe(strings, resultSet.getString(7)));
+			activationTransactionDTO.setImei(resultSet.getString(8));
+			activationTransactionDTO.setIccid(resultSet.getString(9));
+			activationTransactionDTO.setStatus(dedupe(strings, resultSet.getString(10)));
+			activationTransactionDTO.setMdn(resultSet.getString(11));
+			activationTransactionDTO.setIp(resultSet.getString(12));
+			activationTransactionDTO.setNickname(dedupe(strings, resultSet.getString(13)));
+			return activationTransactionDTO;
+		}
+	}
+
+	private static String dedupe(StringDeduplicator strings, String value) {
+		return strings == null ? value : strings.dedupe(value);
+	}
+
+	/**
+	 * Returns one shared instance per distinct value. Stops remembering new values once full so a
+	 * high-cardinality column cannot grow it without bound.
+	 */
+	static final class StringDeduplicator {
+
+		private static final int MAX_ENTRIES = 10_000;
+
+		private final Map<String, String> values = new HashMap<>();
+
+		String dedupe(String value) {
+			if (value == null) {
+				return null;
+			}
+			String existing = values.get(value);
+			if (existing != null) {
+				return existing;
+			}
+			if (values.size() < MAX_ENTRIES) {
+				values.put(value, value);
+			}
+			return value;
+		}
+	}
+}
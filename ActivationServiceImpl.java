@@ -5,9 +5,16 @@ import static com.kajeet.sentinel.util.PhoneUtil.validateImei;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import com.kajeet.sentinel.account.settings.service.ProvisioningGatewayService;
@@ -35,6 +42,10 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -43,12 +54,16 @@ import com.kajeet.sentinel.devicegroup.model.CorpSettings;
 import com.kajeet.sentinel.devicegroup.model.Organization;
 import com.kajeet.sentinel.devices.model.KempEsimInventoryCount;
 import com.kajeet.sentinel.activation.dao.ActivationDao;
+import com.kajeet.sentinel.activation.dao.impl.ActivationDaoImpl;
+import com.kajeet.sentinel.activation.dao.impl.ActivationReadRouting;
+import com.kajeet.sentinel.activation.metrics.ActivationMetrics;
 import com.kajeet.sentinel.activation.service.ActivationService;
 import com.kajeet.sentinel.auth.model.SentinelPrincipal;
 import com.kajeet.sentinel.config.TextConstants;
 import com.kajeet.sentinel.exception.BadRequest;
 import com.kajeet.sentinel.exception.ForbiddenException;
 import com.kajeet.sentinel.exception.RecordNotFoundException;
+import com.kajeet.sentinel.exception.ServiceUnavailableException;
 import com.kajeet.sentinel.exception.SystemException;
 import com.kajeet.sentinel.profile.service.CorpManager;
 import com.kajeet.sentinel.service.common.UserAccessService;
@@ -80,6 +95,33 @@ public class ActivationServiceImpl implements ActivationService {
 	@Autowired
 	private KempManager kempManager;
 
+	@Autowired
+	private ActivationHistoryFirstPageCache historyFirstPageCache;
+
+	@Autowired
+	private ActivationProgressPublisher activationProgressPublisher;
+
+	@Autowired
+	private ActivationReadRouting activationReadRouting;
+
+	@Autowired
+	private ActivationMetrics activationMetrics;
+
+	@Autowired
+	private ActivationTrafficRecorder activationTrafficRecorder;
+
+	@Autowired
+	private ActivationAdmissionControl activationAdmissionControl;
+
+	@Autowired
+	private ActivationDependencyGuards dependencyGuards;
+
+	@Autowired
+	private ActivationIdempotency activationIdempotency;
+
+	@Autowired
+	private ActivationCarrierDispatcher carrierDispatcher;
+
 	@Value("${activation.carrierIpPool.edu}")
 	private String carrierIpPoolEdu;
 	@Value("${activation.carrierIpPool.enterprise}")
@@ -99,6 +141,34 @@ public class ActivationServiceImpl implements ActivationService {
 	@Value("${activation.max.rows:2000}")
 	private int maxActivationRowsCount;
 
+	@Value("${activation.transactionDetails.maxBatchSize:100}")
+	private int maxTransactionDetailsBatchSize;
+
+	/**
+	 * How long a completed history read keeps being shared with identical callers. 0 only coalesces reads
+	 * that overlap in flight.
+	 */
+	@Value("${activation.history.singleFlight.cacheMillis:0}")
+	private long historyReadCacheMillis;
+
+	@Value("${activation.history.delta.maxTransactions:500}")
+	private int maxDeltaTransactions;
+
+	@Value("${activation.history.delta.maxOpenAgeMillis:604800000}")
+	private long maxDeltaOpenAgeMillis;
+
+	@Value("${activation.deviceLookup.maxIdentifiers:200}")
+	private int maxDeviceIdentifierLookup;
+
+	@Value("${activation.profiler.enabled:false}")
+	private boolean phaseProfilerEnabled;
+
+	@Value("${activation.profiler.slowThresholdMillis:5000}")
+	private long phaseProfilerSlowThresholdMillis;
+
+	@Value("${activation.profiler.responseHeader:true}")
+	private boolean phaseProfilerResponseHeader;
+
 	@Value("${verizon.sku.default}")
 	private String verizonCarrierSku;
 
@@ -117,9 +187,26 @@ public class ActivationServiceImpl implements ActivationService {
 	
 	private static final String CONTROL_CENTER = "ControlCenter";
 
+	static final String PHASE_TIMINGS_HEADER = "X-Activation-Phase-Timings";
+
+	private static final Pattern US_ZIP_CODE = Pattern.compile("\\d{5}(-\\d{4})?");
+
 	private static final Logger log = LoggerFactory.getLogger(ActivationServiceImpl.class);
 	private static final ObjectMapper mapper = new ObjectMapper();
 
+	private final SingleFlight<List<Object>, List<ActivationTransactionDTO>> recentTransactionsFlights = new SingleFlight<>(SingleFlight.listCopies());
+	private final SingleFlight<String, Integer> recentTotalCountFlights = new SingleFlight<>();
+	private final SingleFlight<List<Object>, List<ActivationTransactionDTO>> transactionDetailsFlights = new SingleFlight<>(SingleFlight.listCopies());
+
+	/**
+	 * Builds and caches the Jackson serializers used for the activation JSON payload.
+	 */
+	static void warmUpSerializers() throws JsonProcessingException {
+		ActivationInputDto activationInputDto = new ActivationInputDto();
+		activationInputDto.setArray(Arrays.asList(new ActivationDetailsDto()));
+		mapper.writeValueAsString(activationInputDto);
+	}
+
 	private void createSpan(String carrier, String deviceGroup, String filterGroup, String activationLocation, List<ActivationDetailsDto> activationInfoList) {
 		final Span span = GlobalTracer.get().activeSpan();
 		Runnable r = () -> {
@@ -142,6 +229,30 @@ public class ActivationServiceImpl implements ActivationService {
 
 	@Override
 	public SmartSimActivationResponse submitSmartSimActivationRequest(SmartSimActivationRequest smartSimActivationRequest, SentinelPrincipal principal) throws ForbiddenException {
+		activationTrafficRecorder.recordSubmission(ActivationTrafficRecorder.TYPE_SMART_SIM_SUBMIT, principal.getCorpId(),
+				smartSimActivationRequest);
+		String idempotencyKey = activationIdempotency.keyFor(ActivationTrafficRecorder.TYPE_SMART_SIM_SUBMIT,
+				principal.getCorpId(), principal.getName(), smartSimActivationRequest);
+		try {
+			return activationIdempotency.execute(idempotencyKey, () -> {
+				try {
+					return submitSmartSimActivationRequestOnce(smartSimActivationRequest, principal);
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new CompletionException(e);
+				}
+			}, response -> response != null);
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof ForbiddenException) {
+				throw (ForbiddenException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private SmartSimActivationResponse submitSmartSimActivationRequestOnce(SmartSimActivationRequest smartSimActivationRequest,
+			SentinelPrincipal principal) throws ForbiddenException {
 		if(CollectionUtils.isEmpty(smartSimActivationRequest.getActivationLines())) {
 			throw new BadRequest("Activation lines list is empty");
 		}
@@ -154,8 +265,25 @@ public class ActivationServiceImpl implements ActivationService {
 		smartSimActivationRequest.setOcaVersion(2);
 		smartSimActivationRequest.setKeyDeviceGroup(smartSimActivationRequest.getActivationLines().get(0).getServiceDetails().getDeviceGroup());
 
-		SmartSimActivationResponse response = provisioningGatewayService.submitSmartSimActivationRequest(smartSimActivationRequest);
+		SmartSimActivationResponse response;
+		ActivationPhaseProfiler profiler = startPhaseProfiler();
+		try (ActivationAdmissionControl.Permit permit = activationAdmissionControl.acquire(principal.getCorpId(),
+				getMasterCorp(principal.getCorpId()))) {
+			profiler.mark("admission");
+			long gatewayStarted = System.nanoTime();
+			try {
+				response = dependencyGuards.provisioningGateway()
+						.call(() -> provisioningGatewayService.submitSmartSimActivationRequest(smartSimActivationRequest));
+			} finally {
+				activationMetrics.recordPhase(ActivationMetrics.PHASE_PROVISIONING_GATEWAY, gatewayStarted);
+				profiler.mark("provisioning_gateway");
+			}
+		} finally {
+			finishPhaseProfiler(profiler, principal.getCorpId());
+		}
 		if (response!= null && StringUtils.isNotBlank(response.getTransactionId())) {
+			historyFirstPageCache.invalidateHierarchy(principal.getCorpId());
+			activationReadRouting.pinToPrimary(principal.getCorpId());
 			return response;
 		} else {
 			throw new BadRequest("Error in activation");
@@ -164,17 +292,45 @@ public class ActivationServiceImpl implements ActivationService {
 
 	@Override
 	public ActivationResponse submitESimActivationRequest(ActivationRequestInfo esimActivationRequest, SentinelPrincipal principal) {
+		activationTrafficRecorder.recordSubmission(ActivationTrafficRecorder.TYPE_ESIM_SUBMIT, principal.getCorpId(),
+				esimActivationRequest);
 		if(CollectionUtils.isEmpty(esimActivationRequest.getActivationLines())) {
 			throw new BadRequest("Activation lines list is empty");
 		}
+		String idempotencyKey = activationIdempotency.keyFor(ActivationTrafficRecorder.TYPE_ESIM_SUBMIT, principal.getCorpId(),
+				principal.getName(), esimActivationRequest);
+		return activationIdempotency.execute(idempotencyKey,
+				() -> submitESimActivationRequestOnce(esimActivationRequest, principal), response -> response != null);
+	}
+
+	private ActivationResponse submitESimActivationRequestOnce(ActivationRequestInfo esimActivationRequest, SentinelPrincipal principal) {
+
+		ActivationLookupCache lookups = new ActivationLookupCache(hierarchyManager, corpManager, userManager::getUser, this::getWebFilteringGroups);
+		ActivationPhaseProfiler profiler = startPhaseProfiler();
+		try (ActivationAdmissionControl.Permit permit = activationAdmissionControl.acquire(principal.getCorpId(),
+				getMasterCorp(principal.getCorpId(), lookups))) {
+			profiler.mark("admission");
+			ActivationResponse response = submitESimActivationRequest(esimActivationRequest, principal, lookups, profiler);
+			historyFirstPageCache.invalidateHierarchy(principal.getCorpId());
+			activationReadRouting.pinToPrimary(principal.getCorpId());
+			return response;
+		} finally {
+			lookups.logStats(principal.getCorpId());
+			finishPhaseProfiler(profiler, principal.getCorpId());
+		}
+	}
 
-		List<String> carriers = this.getCarriersForESim(principal);
+	private ActivationResponse submitESimActivationRequest(ActivationRequestInfo esimActivationRequest, SentinelPrincipal principal,
+			ActivationLookupCache lookups, ActivationPhaseProfiler profiler) {
+		List<String> carriers = this.getCarriersForESim(principal, lookups);
 		if(!carriers.contains(esimActivationRequest.getCarrier())) {
 			throw new BadRequest("Carrier is not valid");
 		}
 
-		String masterCorp = this.getMasterCorp(esimActivationRequest.getDeviceGroup());
-		KempEsimInventoryCount inventoryCount = this.getKempEsimInventoryCount(esimActivationRequest.getCarrier(), masterCorp);
+		String masterCorp = this.getMasterCorp(esimActivationRequest.getDeviceGroup(), lookups);
+		String inventoryCorp = getMasterCorp(masterCorp, lookups);
+		KempEsimInventoryCount inventoryCount = dependencyGuards.kemp()
+				.read(() -> kempManager.getKempEsimInventoryCount(esimActivationRequest.getCarrier(), inventoryCorp));
 		int maxLineCount = inventoryCount.getTotalAvailableESimCount() < inventoryCount.getMaxDefaultCount()?
 				inventoryCount.getTotalAvailableESimCount():inventoryCount.getMaxDefaultCount();
 
@@ -185,12 +341,19 @@ public class ActivationServiceImpl implements ActivationService {
 		if(esimActivationRequest.getActivationLines().size() > maxLineCount) {
 			throw new BadRequest("Activation lines count exceeds max allowed eSIM count");
 		}
+		profiler.mark("esim_inventory");
 
 		KempInventoryAllocationRequest kempRequest = new KempInventoryAllocationRequest();
 		kempRequest.setCarrier(esimActivationRequest.getCarrier());
 		kempRequest.setEsimRequestCount(esimActivationRequest.getActivationLines().size());
 		kempRequest.setCorpId(masterCorp);
-		List<KempInventoryAllocationResponse> kempResponse = kempManager.allocateKempInventory(kempRequest);
+		long allocationStarted = System.nanoTime();
+		List<KempInventoryAllocationResponse> kempResponse;
+		try {
+			kempResponse = dependencyGuards.kemp().call(() -> kempManager.allocateKempInventory(kempRequest));
+		} finally {
+			activationMetrics.recordPhase(ActivationMetrics.PHASE_KEMP_ALLOCATION, allocationStarted);
+		}
 
 		if(kempResponse == null || kempResponse.size() < esimActivationRequest.getActivationLines().size()) {
 			throw new BadRequest("Error allocating ICCIDs for activation");
@@ -199,14 +362,17 @@ public class ActivationServiceImpl implements ActivationService {
 		for(int index = 0; index < esimActivationRequest.getActivationLines().size(); index++) {
 			esimActivationRequest.getActivationLines().get(index).setIccid(kempResponse.get(index).getIccid());
 		}
+		profiler.mark("kemp_allocation");
 		Long transactionId = null;
 		boolean kempInventoryStatusUpdatedToAvailable = false;
 		try {
-			transactionId = this.submitActivationRequest(esimActivationRequest, principal);
+			transactionId = this.submitActivationRequest(esimActivationRequest, principal, lookups, profiler);
+			profiler.mark("procedure");
 		} catch (Exception e) {
 			log.error("Error submitting activation", e);
 			updateKempInventoryStatus(esimActivationRequest);
 			kempInventoryStatusUpdatedToAvailable = true;
+			profiler.mark("kemp_rollback");
 		}
 		if (transactionId != null && transactionId != 0) {
 			return new ActivationResponse(transactionId);
@@ -218,15 +384,28 @@ public class ActivationServiceImpl implements ActivationService {
 		}
 	}
 
+	/**
+	 * Compensation for a failed eSIM submission. Runs on the request thread, outside the Kemp guard, so an open
+	 * circuit or a full bulkhead cannot stop it, and every line is attempted even if others fail.
+	 */
 	private void updateKempInventoryStatus(ActivationRequestInfo esimActivationRequest) {
-		esimActivationRequest.getActivationLines().forEach(activationLine -> {
-			KempUpdateRequest kempUpdateRequest = new KempUpdateRequest();
-			kempUpdateRequest.setIccid(activationLine.getIccid());
-			kempUpdateRequest.setSource("Sentinel");
-			kempUpdateRequest.setStatus("Available");
-			kempManager.updateKempInventory(kempUpdateRequest);
-			log.debug("Rolling back ICCID {}", activationLine.getIccid());
-		});
+		long rollbackStarted = System.nanoTime();
+		try {
+			for (ActivationLine activationLine : esimActivationRequest.getActivationLines()) {
+				KempUpdateRequest kempUpdateRequest = new KempUpdateRequest();
+				kempUpdateRequest.setIccid(activationLine.getIccid());
+				kempUpdateRequest.setSource("Sentinel");
+				kempUpdateRequest.setStatus("Available");
+				try {
+					kempManager.updateKempInventory(kempUpdateRequest);
+					log.debug("Rolling back ICCID {}", activationLine.getIccid());
+				} catch (RuntimeException e) {
+					log.error("Could not return ICCID {} to Kemp inventory", activationLine.getIccid(), e);
+				}
+			}
+		} finally {
+			activationMetrics.recordPhase(ActivationMetrics.PHASE_KEMP_ROLLBACK, rollbackStarted);
+		}
 	}
 
 	private String getMasterCorp(String corpId) {
@@ -234,6 +413,11 @@ public class ActivationServiceImpl implements ActivationService {
 		return topLevelOrganization == null ? corpId : topLevelOrganization.getCorpId();
 	}
 
+	private String getMasterCorp(String corpId, ActivationLookupCache lookups) {
+		Organization topLevelOrganization = lookups.getTopLevelOrganization(corpId);
+		return topLevelOrganization == null ? corpId : topLevelOrganization.getCorpId();
+	}
+
 	private void validateActivationLineForSmartSim(SmartSimActivationLine activationLine, SentinelPrincipal principal) throws ForbiddenException {
 		if(activationLine == null || activationLine.getServiceDetails() == null || activationLine.getServiceDetails().getServiceAddress() == null) {
 			throw new BadRequest("Invalid activation line format");
@@ -268,6 +452,186 @@ public class ActivationServiceImpl implements ActivationService {
 									throws RecordNotFoundException, SystemException, ForbiddenException {
 
 		log.info("Inside submitActivationRequest for corpId: {}", principal.getCorpId());
+		activationTrafficRecorder.recordSubmission(ActivationTrafficRecorder.TYPE_SUBMIT, principal.getCorpId(),
+				activationRequestInfo);
+		String idempotencyKey = activationIdempotency.keyFor(ActivationTrafficRecorder.TYPE_SUBMIT, principal.getCorpId(),
+				principal.getName(), activationRequestInfo);
+		try {
+			return activationIdempotency.execute(idempotencyKey, () -> {
+				try {
+					return submitActivationRequestOnce(activationRequestInfo, principal);
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new CompletionException(e);
+				}
+			}, transactionId -> transactionId != null && transactionId != 0);
+		} catch (CompletionException e) {
+			rethrowSubmissionFailure(e);
+			throw e;
+		}
+	}
+
+	private Long submitActivationRequestOnce(ActivationRequestInfo activationRequestInfo, SentinelPrincipal principal)
+			throws RecordNotFoundException, SystemException, ForbiddenException {
+		ActivationLookupCache lookups = new ActivationLookupCache(hierarchyManager, corpManager, userManager::getUser, this::getWebFilteringGroups);
+		ActivationPhaseProfiler profiler = startPhaseProfiler();
+		try (ActivationAdmissionControl.Permit permit = activationAdmissionControl.acquire(principal.getCorpId(),
+				getMasterCorp(principal.getCorpId(), lookups))) {
+			profiler.mark("admission");
+			Long transactionId = submitActivationRequest(activationRequestInfo, principal, lookups, profiler);
+			profiler.mark("procedure");
+			if (transactionId != null && transactionId != 0) {
+				historyFirstPageCache.invalidateHierarchy(principal.getCorpId());
+				activationReadRouting.pinToPrimary(principal.getCorpId());
+			}
+			return transactionId;
+		} finally {
+			lookups.logStats(principal.getCorpId());
+			finishPhaseProfiler(profiler, principal.getCorpId());
+		}
+	}
+
+	@Override
+	public MultiCarrierActivationResponse submitMultiCarrierActivationRequest(MultiCarrierActivationRequest multiCarrierRequest,
+			SentinelPrincipal principal) throws RecordNotFoundException, SystemException, ForbiddenException {
+		if (multiCarrierRequest == null || CollectionUtils.isEmpty(multiCarrierRequest.getActivationRequests())) {
+			throw new BadRequest("Activation requests list is empty");
+		}
+		log.info("Inside submitMultiCarrierActivationRequest for corpId: {}", principal.getCorpId());
+		activationTrafficRecorder.recordSubmission(ActivationTrafficRecorder.TYPE_MULTI_CARRIER_SUBMIT, principal.getCorpId(),
+				multiCarrierRequest);
+		// keyed before grouping, which merges line lists into the first request of each carrier
+		String idempotencyKey = activationIdempotency.keyFor(ActivationTrafficRecorder.TYPE_MULTI_CARRIER_SUBMIT,
+				principal.getCorpId(), principal.getName(), multiCarrierRequest);
+		Map<String, ActivationRequestInfo> requestsByCarrier = groupByCarrier(multiCarrierRequest.getActivationRequests());
+		try {
+			return activationIdempotency.execute(idempotencyKey, () -> {
+				try {
+					return submitMultiCarrierActivationRequestOnce(requestsByCarrier, principal, idempotencyKey);
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new CompletionException(e);
+				}
+			}, response -> response.getErrors().isEmpty());
+		} catch (CompletionException e) {
+			rethrowSubmissionFailure(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Validates and prepares every carrier group before anything is submitted, so a validation error rejects
+	 * the whole upload. The procedure calls then run in parallel and succeed or fail per carrier. Each
+	 * carrier's transaction id is retained under its own part of the idempotency key, so a retry resubmits only
+	 * the carriers that failed.
+	 */
+	private MultiCarrierActivationResponse submitMultiCarrierActivationRequestOnce(
+			Map<String, ActivationRequestInfo> requestsByCarrier, SentinelPrincipal principal, String idempotencyKey)
+			throws RecordNotFoundException, SystemException, ForbiddenException {
+		ActivationLookupCache lookups = new ActivationLookupCache(hierarchyManager, corpManager, userManager::getUser, this::getWebFilteringGroups);
+		ActivationPhaseProfiler profiler = startPhaseProfiler();
+		try (ActivationAdmissionControl.Permit permit = activationAdmissionControl.acquire(principal.getCorpId(),
+				getMasterCorp(principal.getCorpId(), lookups))) {
+			profiler.mark("admission");
+			Map<String, Supplier<Long>> submissions = new LinkedHashMap<>();
+			for (Map.Entry<String, ActivationRequestInfo> entry : requestsByCarrier.entrySet()) {
+				submissions.put(entry.getKey(), prepareActivationSubmission(entry.getValue(), principal, lookups, profiler));
+			}
+			Map<String, CompletableFuture<Long>> results = new LinkedHashMap<>();
+			submissions.forEach((carrier, submission) -> results.put(carrier, carrierDispatcher.dispatch(
+					() -> activationIdempotency.execute(activationIdempotency.partKey(idempotencyKey, carrier), submission,
+							transactionId -> transactionId != null && transactionId != 0))));
+
+			MultiCarrierActivationResponse response = new MultiCarrierActivationResponse();
+			for (Map.Entry<String, CompletableFuture<Long>> result : results.entrySet()) {
+				String carrier = result.getKey();
+				try {
+					Long transactionId = result.getValue().join();
+					if (transactionId != null && transactionId != 0) {
+						response.getTransactionIds().put(carrier, transactionId);
+					} else {
+						response.getErrors().put(carrier, "Error in activation");
+					}
+				} catch (CompletionException e) {
+					log.error("Error submitting {} activation lines for corpId {}", carrier, principal.getCorpId(), e.getCause());
+					response.getErrors().put(carrier, e.getCause() instanceof ServiceUnavailableException
+							? e.getCause().getMessage() : "Error in activation");
+				}
+			}
+			profiler.mark("procedure");
+			if (!response.getTransactionIds().isEmpty()) {
+				historyFirstPageCache.invalidateHierarchy(principal.getCorpId());
+				activationReadRouting.pinToPrimary(principal.getCorpId());
+			}
+			return response;
+		} finally {
+			lookups.logStats(principal.getCorpId());
+			finishPhaseProfiler(profiler, principal.getCorpId());
+		}
+	}
+
+	/**
+	 * Merges the lines of entries for the same carrier, keyed by the {@link Carriers} name so spellings that
+	 * convertCarriers treats as one carrier are submitted together. Entries can only be merged when the request
+	 * level fields the lines are built from agree.
+	 */
+	private static Map<String, ActivationRequestInfo> groupByCarrier(List<ActivationRequestInfo> activationRequests) {
+		Map<String, ActivationRequestInfo> requestsByCarrier = new LinkedHashMap<>();
+		for (ActivationRequestInfo activationRequest : activationRequests) {
+			Carriers carrierEnum = activationRequest == null || StringUtils.isBlank(activationRequest.getCarrier()) ? null
+					: Carriers.convertCarriers(activationRequest.getCarrier());
+			if (carrierEnum == null) {
+				throw new BadRequest("Invalid Carrier!");
+			}
+			ActivationRequestInfo group = requestsByCarrier.get(carrierEnum.name());
+			if (group == null) {
+				requestsByCarrier.put(carrierEnum.name(), activationRequest);
+				continue;
+			}
+			if (!StringUtils.equals(group.getDeviceGroup(), activationRequest.getDeviceGroup())
+					|| !StringUtils.equals(group.getFilterGroup(), activationRequest.getFilterGroup())
+					|| !StringUtils.equals(group.getServiceZipCode(), activationRequest.getServiceZipCode())
+					|| !StringUtils.equals(group.getActivationLocation(), activationRequest.getActivationLocation())) {
+				throw new BadRequest("Requests for carrier " + carrierEnum.name()
+						+ " must share device group, filter group, zip code and location");
+			}
+			List<ActivationLine> lines = new ArrayList<>();
+			if (group.getActivationLines() != null) {
+				lines.addAll(group.getActivationLines());
+			}
+			if (activationRequest.getActivationLines() != null) {
+				lines.addAll(activationRequest.getActivationLines());
+			}
+			group.setActivationLines(lines);
+		}
+		return requestsByCarrier;
+	}
+
+	private Long submitActivationRequest(ActivationRequestInfo activationRequestInfo, SentinelPrincipal principal,
+			ActivationLookupCache lookups, ActivationPhaseProfiler profiler) throws RecordNotFoundException, SystemException, ForbiddenException {
+		return prepareActivationSubmission(activationRequestInfo, principal, lookups, profiler).get();
+	}
+
+	/**
+	 * Validates the request and builds its lines, returning the procedure call still to be made. Lookups go
+	 * through the given cache, so preparing several requests for one corp resolves them once. The validation
+	 * phase is recorded even when validation fails.
+	 */
+	private Supplier<Long> prepareActivationSubmission(ActivationRequestInfo activationRequestInfo, SentinelPrincipal principal,
+			ActivationLookupCache lookups, ActivationPhaseProfiler profiler) throws RecordNotFoundException, SystemException, ForbiddenException {
+		ActivationMetrics.Phase validation = activationMetrics.startPhase(ActivationMetrics.PHASE_VALIDATION);
+		try {
+			return prepareActivationSubmission(activationRequestInfo, principal, lookups, profiler, validation);
+		} finally {
+			validation.end();
+		}
+	}
+
+	private Supplier<Long> prepareActivationSubmission(ActivationRequestInfo activationRequestInfo, SentinelPrincipal principal,
+			ActivationLookupCache lookups, ActivationPhaseProfiler profiler, ActivationMetrics.Phase validation)
+			throws RecordNotFoundException, SystemException, ForbiddenException {
 
 		List<ActivationLine> activationLines = activationRequestInfo.getActivationLines();
 
@@ -292,8 +656,9 @@ public class ActivationServiceImpl implements ActivationService {
 		if(isVerizonBI) {
 			userAccessService.checkFeatureAccess(principal, AccessObjectEnum.VERIZON_BUSINESS_INTERNET_PLAN);
 		}
+		profiler.mark("access");
 
-		String businessType = hierarchyManager.getBusinessTypeByCorpId(principal.getCorpId());
+		String businessType = lookups.getBusinessTypeByCorpId(principal.getCorpId());
 		boolean isKPW = Constants.TYPE_KPW.equalsIgnoreCase(businessType);
 		if (isVerizon || isTMO || isVerizonPriority  || isAttFirstNetExtendPrimary || isVerizonBI) {
 			validateUSZipCode(activationRequestInfo.getServiceZipCode());
@@ -309,16 +674,19 @@ public class ActivationServiceImpl implements ActivationService {
 
 		//NS filterGroups do not apply for Non Bearer carriers
 		if(!getNonBearerCarriers(businessType).contains(activationRequestInfo.getCarrier())){
-			validateFilterGroups(principal, activationRequestInfo.getFilterGroup());
+			validateFilterGroups(principal, activationRequestInfo.getFilterGroup(), lookups);
 		} 
+		validation.end();
+		profiler.mark("validation");
 
 		boolean isSuccess = corpManager.addNetsweeperGroupId(activationRequestInfo.getFilterGroup());
+		profiler.mark("netsweeper");
 
 		if (!isSuccess) {
 			log.error("Unable to Add/Update filter group: {} to Catalyst database.", activationRequestInfo.getFilterGroup());
 		}
 
-		CorpSettings corpSettings = corpManager.getCorpSetting(activationRequestInfo.getDeviceGroup());
+		CorpSettings corpSettings = lookups.getCorpSetting(activationRequestInfo.getDeviceGroup());
 
 		ActivationInventoryInfo activationInventoryInfo;
 		
@@ -326,6 +694,7 @@ public class ActivationServiceImpl implements ActivationService {
 		if("I".equals(firstResponder)) {
 			firstResponder = corpManager.getFirstResponderByHierarchy(activationRequestInfo.getDeviceGroup());
 		}
+		profiler.mark("corp_settings");
 
 		if("N".equalsIgnoreCase(firstResponder) && !isKPW) {
 			log.info("Choosing case 'N' and !kpw '{}'", activationRequestInfo.getCarrier());
@@ -343,13 +712,14 @@ public class ActivationServiceImpl implements ActivationService {
 			log.error("ActivationInventoryInfo not found for carrier: {}", activationRequestInfo.getCarrier());
 			throw new BadRequest("carrier not found: " + activationRequestInfo.getCarrier());
 		}
+		profiler.mark("inventory");
 
 		String carrierIpPool;
 
 		if(!StringUtils.isBlank(corpSettings.getCarrierIpPool())) {
 			carrierIpPool = corpSettings.getCarrierIpPool();
 		} else {
-			carrierIpPool = getCarrierIpPool(principal.getCorpId(), isVerizonBI);
+			carrierIpPool = getCarrierIpPoolForBusinessType(lookups.getBusinessTypeByCorpId(principal.getCorpId()), isVerizonBI);
 		}
 
 		String sku = null;
@@ -393,8 +763,8 @@ public class ActivationServiceImpl implements ActivationService {
 			case TMO:
 			{
 				// Use TMO_INSTANCE from master corp CorpSettings to determine which TMO activation method to use
-				String masterCorpId = getMasterCorp(activationRequestInfo.getDeviceGroup());
-				CorpSettings masterCorpSettings = corpManager.getCorpSetting(masterCorpId);
+				String masterCorpId = getMasterCorp(activationRequestInfo.getDeviceGroup(), lookups);
+				CorpSettings masterCorpSettings = lookups.getCorpSetting(masterCorpId);
 				 tmoInstance = masterCorpSettings.getTmoInstance();
 					if (CONTROL_CENTER.equalsIgnoreCase(tmoInstance)) {
 						customCorpRatePlan = null;
@@ -442,10 +812,13 @@ public class ActivationServiceImpl implements ActivationService {
 		}
 
 
+		profiler.mark("rate_plan");
+
 		ActivationInputDto activationInputDto = new ActivationInputDto();
 		List<ActivationDetailsDto> activationInfoList = new ArrayList<>();
 		Map<String, String> iccidImeiMap = new HashMap<>();
 
+		long lineValidationStarted = System.nanoTime();
 		for (ActivationLine activationLine : activationLines) {
 			ActivationDetailsDto activationInfo = new ActivationDetailsDto();
 			if (validateIccidImei(activationLine.getImei(), activationLine.getIccid(), iccidImeiMap)) {
@@ -473,7 +846,7 @@ public class ActivationServiceImpl implements ActivationService {
 					setVerizonGlobalFields(activationRequestInfo, carrierIpPool, sku, leadId, activationInfo);
 				}
 				else if (isAttFirstNet || isAttFirstNetExtendPrimary) {
-					setupCommonFields(activationRequestInfo, sku, activationInfo);
+					setupCommonFields(activationRequestInfo, sku, activationInfo, lookups);
 
 					activationInfo.setAttFirstNet_AgencyEndUserName(activationRequestInfo.getAgencyEndUserName());
 					activationInfo.setAttFirstNet_Address(activationRequestInfo.getBillingAddress());
@@ -504,7 +877,7 @@ public class ActivationServiceImpl implements ActivationService {
 							activationInfo.setCarrierAccountNo(Carriers.TMOCC1.getDescription());
 						}
 					} else if (isVerizonPriority) {
-						setupCommonFields(activationRequestInfo, sku, activationInfo);
+						setupCommonFields(activationRequestInfo, sku, activationInfo, lookups);
 						if (ActivationLocationEnum.EAST.getLocation().equalsIgnoreCase(activationRequestInfo
 														.getActivationLocation())) {
 							activationInfo.setCarrierIpPool(activationInventoryInfo.getEastIpPool());
@@ -541,66 +914,77 @@ public class ActivationServiceImpl implements ActivationService {
 				activationInfoList.add(activationInfo);
 			}
 		}
+		activationMetrics.recordPhase(ActivationMetrics.PHASE_LINE_VALIDATION, lineValidationStarted);
+		activationMetrics.recordLineCount(carrierEnum.name(), activationInfoList.size());
+		profiler.mark("line_validation");
 		createSpan(activationRequestInfo.getCarrier(), activationRequestInfo.getDeviceGroup(), activationRequestInfo.getFilterGroup(), activationRequestInfo.getActivationLocation(), activationInfoList);
 		activationInputDto.setArray(activationInfoList);
+
+		String submissionRoute = getSubmissionRoute(carrierEnum, tmoInstance);
+		if (activationDao.isStagedSubmission(submissionRoute)) {
+			User user = lookups.getUser(principal);
+			profiler.mark("get_user");
+			String activationUserName = String.format(ACTIVATION_USER_NAME, user.getEmail());
+			log.info("Submitting {} activation lines for corpId {} through the {} staging table", activationInfoList.size(),
+					principal.getCorpId(), submissionRoute);
+			return () -> activationDao.submitStagedActivationRequest(submissionRoute, activationInfoList, principal.getCorpId(),
+					principal.getName(), activationUserName);
+		}
+
 		String activationJsonString;
+		long serializationStarted = System.nanoTime();
 		try {
 			activationJsonString = mapper.writeValueAsString(activationInputDto);
 		} catch (JsonProcessingException e) {
 			log.error("Error mapping Activation request info to json string");
 			throw new SystemException("An error occurred. Please contact support");
+		} finally {
+			activationMetrics.recordPhase(ActivationMetrics.PHASE_SERIALIZATION, serializationStarted);
 		}
 
+		profiler.mark("serialization");
+
 		log.info("activationJsonString:{}", activationJsonString);
-		User user = userManager.getUser(principal);
+		User user = lookups.getUser(principal);
+		profiler.mark("get_user");
 
 		String activationUserName = String.format(ACTIVATION_USER_NAME, user.getEmail());
+		return () -> submitToCarrier(submissionRoute, activationJsonString, principal, activationUserName);
+	}
 
-
-		switch (carrierEnum) {
-			case Verizon:
+	private Long submitToCarrier(String submissionRoute, String activationJsonString, SentinelPrincipal principal,
+			String activationUserName) {
+		switch (submissionRoute) {
+			case ActivationDaoImpl.ROUTE_VERIZON:
 				return activationDao.submitVerizonActivationRequest(activationJsonString, principal.getCorpId(),
 												principal.getName(), activationUserName);
-			case Verizon_Priority:
-			case Verizon_BI:
+			case ActivationDaoImpl.ROUTE_VERIZON_PRIORITY:
 				return activationDao.submitVerizonPriorityActivationRequest(activationJsonString, principal.getCorpId(),
 												principal.getName(), activationUserName);
-			case TMO:
-			{
-				
-				if(CONTROL_CENTER.equalsIgnoreCase(tmoInstance)) {
-					log.info("Submitting TMO Control Center activation request corpId {}, UserName {}, activation UserName {}.",principal.getCorpId(),
-							principal.getName(), activationUserName);
-					// check if corp is demo corp for cisco or pente
-					return activationDao.submitTMOControlCenterActivationRequest(activationJsonString, principal.getCorpId(),
+			case ActivationDaoImpl.ROUTE_TMO_CONTROL_CENTER:
+				log.info("Submitting TMO Control Center activation request corpId {}, UserName {}, activation UserName {}.",principal.getCorpId(),
+						principal.getName(), activationUserName);
+				// check if corp is demo corp for cisco or pente
+				return activationDao.submitTMOControlCenterActivationRequest(activationJsonString, principal.getCorpId(),
 												principal.getName(), activationUserName);
-				} else { //netcracker
-					log.info("Submitting TMO Netcracker activation request corpId {}, UserName {}, activation UserName {}.",principal.getCorpId(),
-							principal.getName(), activationUserName);
-					return activationDao.submitTMOActivationRequest(activationJsonString, principal.getCorpId(),
+			case ActivationDaoImpl.ROUTE_TMO: //netcracker
+				log.info("Submitting TMO Netcracker activation request corpId {}, UserName {}, activation UserName {}.",principal.getCorpId(),
+						principal.getName(), activationUserName);
+				return activationDao.submitTMOActivationRequest(activationJsonString, principal.getCorpId(),
 												principal.getName(), activationUserName);
-				}
-			}
-			
-			case ATT_FirstNet:
+			case ActivationDaoImpl.ROUTE_ATT_FIRSTNET:
 				return activationDao.submitAttFirstNetActivationRequest(activationJsonString, principal.getCorpId(),
 												principal.getName(), activationUserName);
-			case ATT_FirstNet_Extended_Primary:
+			case ActivationDaoImpl.ROUTE_ATT_FIRSTNET_EXTENDED_PRIMARY:
 				return activationDao.submitAttFirstNetExtendedPrimaryActivationRequest(activationJsonString, principal.getCorpId(),
 												principal.getName(), activationUserName);
-			case US_Cellular:
+			case ActivationDaoImpl.ROUTE_USC:
 				return activationDao.submitUSCActivationRequest(activationJsonString, principal.getCorpId(),
 												principal.getName(), activationUserName);
-			case KJPLTE:
-				return activationDao.submitKNEActivationRequest(activationJsonString, principal.getCorpId(),
-												principal.getName(), activationUserName);
-			case KCN:
+			case ActivationDaoImpl.ROUTE_KNE:
 				return activationDao.submitKNEActivationRequest(activationJsonString, principal.getCorpId(),
 												principal.getName(), activationUserName);
-			case KPN:
-				return activationDao.submitKNEActivationRequest(activationJsonString, principal.getCorpId(),
-												principal.getName(), activationUserName);	
-			case BELLCANADA:
+			case ActivationDaoImpl.ROUTE_BELL_CANADA:
 				return activationDao.submitBellCanadaActivationRequest(activationJsonString, principal.getCorpId(),
 												principal.getName(), activationUserName);
 			default:
@@ -609,6 +993,88 @@ public class ActivationServiceImpl implements ActivationService {
 		}
 	}
 
+	/**
+	 * The bulk_activate_* route for a carrier. This is the only carrier to procedure mapping: both the staged
+	 * check and {@link #submitToCarrier} go by the route.
+	 */
+	private static String getSubmissionRoute(Carriers carrierEnum, String tmoInstance) {
+		switch (carrierEnum) {
+			case Verizon:
+				return ActivationDaoImpl.ROUTE_VERIZON;
+			case Verizon_Priority:
+			case Verizon_BI:
+				return ActivationDaoImpl.ROUTE_VERIZON_PRIORITY;
+			case TMO:
+				return CONTROL_CENTER.equalsIgnoreCase(tmoInstance) ? ActivationDaoImpl.ROUTE_TMO_CONTROL_CENTER
+						: ActivationDaoImpl.ROUTE_TMO;
+			case ATT_FirstNet:
+				return ActivationDaoImpl.ROUTE_ATT_FIRSTNET;
+			case ATT_FirstNet_Extended_Primary:
+				return ActivationDaoImpl.ROUTE_ATT_FIRSTNET_EXTENDED_PRIMARY;
+			case US_Cellular:
+				return ActivationDaoImpl.ROUTE_USC;
+			case KJPLTE:
+			case KCN:
+			case KPN:
+				return ActivationDaoImpl.ROUTE_KNE;
+			case BELLCANADA:
+				return ActivationDaoImpl.ROUTE_BELL_CANADA;
+			default:
+				return ActivationDaoImpl.ROUTE_ATT;
+		}
+	}
+
+	/**
+	 * Rethrows the checked exception a deduplicated submission failed with.
+	 */
+	private static void rethrowSubmissionFailure(CompletionException e)
+			throws RecordNotFoundException, SystemException, ForbiddenException {
+		Throwable cause = e.getCause();
+		if (cause instanceof RecordNotFoundException) {
+			throw (RecordNotFoundException) cause;
+		}
+		if (cause instanceof SystemException) {
+			throw (SystemException) cause;
+		}
+		if (cause instanceof ForbiddenException) {
+			throw (ForbiddenException) cause;
+		}
+	}
+
+	private ActivationPhaseProfiler startPhaseProfiler() {
+		return phaseProfilerEnabled ? ActivationPhaseProfiler.start() : ActivationPhaseProfiler.DISABLED;
+	}
+
+	/**
+	 * Publishes the phase breakdown on the response header and the local root span, and logs it when the
+	 * request crossed activation.profiler.slowThresholdMillis.
+	 */
+	private void finishPhaseProfiler(ActivationPhaseProfiler profiler, String corpId) {
+		if (!profiler.isEnabled()) {
+			return;
+		}
+		String breakdown = profiler.toString();
+		if (phaseProfilerResponseHeader) {
+			RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+			if (requestAttributes instanceof ServletRequestAttributes
+					&& ((ServletRequestAttributes) requestAttributes).getResponse() != null) {
+				((ServletRequestAttributes) requestAttributes).getResponse().setHeader(PHASE_TIMINGS_HEADER, breakdown);
+			}
+		}
+		Span span = GlobalTracer.get().activeSpan();
+		if (span instanceof MutableSpan) {
+			MutableSpan rootSpan = ((MutableSpan) span).getLocalRootSpan();
+			for (int i = 0; i < profiler.getPhaseCount(); i++) {
+				rootSpan.setTag("activation.phase." + profiler.getPhase(i) + "_ns", profiler.getPhaseNanos(i));
+			}
+			rootSpan.setTag("activation.phase.total_ns", profiler.getTotalNanos());
+		}
+		if (profiler.getTotalNanos() >= TimeUnit.MILLISECONDS.toNanos(phaseProfilerSlowThresholdMillis)) {
+			log.warn("Slow activation submission for corpId: {} took {} ms. Phases (ns): {}", corpId,
+					TimeUnit.NANOSECONDS.toMillis(profiler.getTotalNanos()), breakdown);
+		}
+	}
+
 	private void setVerizonGlobalFields(ActivationRequestInfo activationRequestInfo, String carrierIpPool, String sku,
 			String leadId, ActivationDetailsDto activationInfo) {
 		activationInfo.setCarrierIpPool(carrierIpPool);
@@ -657,8 +1123,8 @@ public class ActivationServiceImpl implements ActivationService {
 		}
 
 	private void setupCommonFields(ActivationRequestInfo activationRequestInfo, String sku,
-									ActivationDetailsDto activationInfo) throws SystemException {
-		Organization parentCorpDetails = hierarchyManager.getTopLevelOrganization(activationRequestInfo.getDeviceGroup());
+									ActivationDetailsDto activationInfo, ActivationLookupCache lookups) throws SystemException {
+		Organization parentCorpDetails = lookups.getTopLevelOrganization(activationRequestInfo.getDeviceGroup());
 		String corpId = parentCorpDetails.getCorpId();
 		String carrierAccountID = getCarrierAccountId(corpId, activationRequestInfo.getCarrier());
 
@@ -676,8 +1142,10 @@ public class ActivationServiceImpl implements ActivationService {
 	}
 
 	public String getCarrierIpPool(String corpId, Boolean isVerizonBI) {
+		return getCarrierIpPoolForBusinessType(hierarchyManager.getBusinessTypeByCorpId(corpId), isVerizonBI);
+	}
 
-		String businessType = hierarchyManager.getBusinessTypeByCorpId(corpId);
+	private String getCarrierIpPoolForBusinessType(String businessType, Boolean isVerizonBI) {
 		
 		if(isVerizonBI && Constants.TYPE_EDUCATION.equalsIgnoreCase(businessType)) {
 			return carrierIpPoolVerizonBIEDU;
@@ -732,18 +1200,26 @@ public class ActivationServiceImpl implements ActivationService {
 
 	public void validateFilterGroups(SentinelPrincipal principal, String filterGroup) {
 		
-		if (StringUtils.isBlank(filterGroup) || !webFilteringManagerProxy
-										.getAllWebFilteringGroupsForUser(principal.getName()).contains(filterGroup)) {
+		if (StringUtils.isBlank(filterGroup) || !getWebFilteringGroups(principal.getName()).contains(filterGroup)) {
 			throw new BadRequest("Invalid Filter group");
 		}
 	}
 
+	private void validateFilterGroups(SentinelPrincipal principal, String filterGroup, ActivationLookupCache lookups) {
+		if (StringUtils.isBlank(filterGroup) || !lookups.getWebFilteringGroups(principal.getName()).contains(filterGroup)) {
+			throw new BadRequest("Invalid Filter group");
+		}
+	}
+
+	private Collection<String> getWebFilteringGroups(String userName) {
+		return dependencyGuards.webFiltering().read(() -> webFilteringManagerProxy.getAllWebFilteringGroupsForUser(userName));
+	}
+
 	private void validateUSZipCode(String zipCode) {
-		String zipCodePattern = "\\d{5}(-\\d{4})?";
 		if (StringUtils.isBlank(zipCode)) {
 			throw new BadRequest("Zipcode is Mandatory");
 		}
-		if (!StringUtils.isBlank(zipCode) && !zipCode.matches(zipCodePattern)) {
+		if (!US_ZIP_CODE.matcher(zipCode).matches()) {
 			throw new BadRequest("Invalid Zipcode");
 		}
 	}
@@ -810,13 +1286,23 @@ public class ActivationServiceImpl implements ActivationService {
 	@Override
 	public List<ActivationTransactionDTO> getRecentActivationTransactions(String corpId, Integer offset, Integer limit, String sortDir,
 			String userTimezone) {
-		sortDir = StringUtils.defaultIfEmpty(sortDir, "DESC");
-		return activationDao.getRecentActivationTransactions(corpId, offset, limit, sortDir, userTimezone);
+		activationTrafficRecorder.recordHistoryRead(ActivationTrafficRecorder.TYPE_RECENT_TRANSACTIONS, corpId,
+				"offset", offset, "limit", limit, "sortDir", sortDir, "userTimezone", userTimezone);
+		String sortDirection = StringUtils.upperCase(StringUtils.defaultIfEmpty(sortDir, "DESC"));
+		Supplier<List<ActivationTransactionDTO>> loader = () -> recentTransactionsFlights.execute(
+				Arrays.asList(corpId, offset, limit, sortDirection, userTimezone), historyReadCacheMillis,
+				() -> activationDao.getRecentActivationTransactions(corpId, offset, limit, sortDirection, userTimezone));
+		if (offset == null || offset == 0) {
+			return historyFirstPageCache.getFirstPage(corpId, Arrays.asList(limit, sortDirection, userTimezone), loader);
+		}
+		return loader.get();
 	}
 	
 	@Override
 	public List<ActivationTransactionDTO> getAllActivationHistoryDetails(String corpId, String sortDir,
 			String userTimezone) {
+		activationTrafficRecorder.recordHistoryRead(ActivationTrafficRecorder.TYPE_ALL_HISTORY_DETAILS, corpId,
+				"sortDir", sortDir, "userTimezone", userTimezone);
 		sortDir = StringUtils.defaultIfEmpty(sortDir, "DESC");
 		return activationDao.getAllActivationHistoryDetails(corpId, sortDir, userTimezone);
 	}
@@ -824,7 +1310,88 @@ public class ActivationServiceImpl implements ActivationService {
 	@Override
 	public List<ActivationTransactionDTO> getActivationTransactionDetails(String transactionId, String corpId,
 			String userTimezone) {
-		return activationDao.getActivationTransactionDetails(transactionId, corpId, userTimezone);
+		activationTrafficRecorder.recordHistoryRead(ActivationTrafficRecorder.TYPE_TRANSACTION_DETAILS, corpId,
+				"transactionId", transactionId, "userTimezone", userTimezone);
+		return transactionDetailsFlights.execute(Arrays.asList(transactionId, corpId, userTimezone), historyReadCacheMillis,
+				() -> activationDao.getActivationTransactionDetails(transactionId, corpId, userTimezone));
+	}
+
+	@Override
+	public Map<String, List<ActivationTransactionDTO>> getActivationTransactionDetails(List<String> transactionIds,
+			String corpId, String userTimezone) {
+		if (CollectionUtils.isEmpty(transactionIds)) {
+			throw new BadRequest("Transaction id list is empty");
+		}
+		if (transactionIds.size() > maxTransactionDetailsBatchSize) {
+			throw new BadRequest("Max limit of transactions " + maxTransactionDetailsBatchSize + " exceeded.");
+		}
+		return activationDao.getActivationTransactionDetails(transactionIds.stream().distinct().collect(Collectors.toList()),
+				corpId, userTimezone);
+	}
+
+	@Override
+	public SseEmitter subscribeToActivationProgress(List<String> transactionIds, String corpId) {
+		if (CollectionUtils.isEmpty(transactionIds)) {
+			throw new BadRequest("Transaction id list is empty");
+		}
+		if (transactionIds.size() > maxTransactionDetailsBatchSize) {
+			throw new BadRequest("Max limit of transactions " + maxTransactionDetailsBatchSize + " exceeded.");
+		}
+		return activationProgressPublisher.subscribe(transactionIds.stream().distinct().collect(Collectors.toList()), corpId);
+	}
+
+	@Override
+	public ActivationHistoryDelta getActivationHistoryDelta(String corpId, ActivationHistoryWatermark after, Integer limit,
+			String userTimezone) {
+		if (after == null) {
+			after = new ActivationHistoryWatermark(0L, "0", null);
+		} else if (StringUtils.isBlank(after.getTransactionId()) || !StringUtils.isNumeric(after.getTransactionId())) {
+			throw new BadRequest("Invalid watermark transactionId: " + after.getTransactionId());
+		}
+		// transactions still pending after maxOpenAgeMillis are treated as stuck and no longer re-sent
+		long oldestOpen = System.currentTimeMillis() - maxDeltaOpenAgeMillis;
+		if (after.getOpenSince() != null && after.getOpenSince() < oldestOpen) {
+			after.setOpenSince(oldestOpen);
+		}
+		int transactionLimit = limit == null || limit <= 0 ? maxDeltaTransactions : Math.min(limit, maxDeltaTransactions);
+		return activationDao.getActivationHistoryDelta(corpId, after, transactionLimit, userTimezone);
+	}
+
+	@Override
+	public List<ActivationTransactionDTO> findActivationLinesByDeviceIdentifiers(String corpId, List<String> imeis,
+			List<String> iccids, List<String> mdns, String userTimezone) {
+		List<String> imeiValues = normalizeDeviceIdentifiers(imeis);
+		List<String> iccidValues = normalizeDeviceIdentifiers(iccids);
+		List<String> mdnValues = normalizeDeviceIdentifiers(mdns);
+		int identifierCount = imeiValues.size() + iccidValues.size() + mdnValues.size();
+		if (identifierCount == 0) {
+			throw new BadRequest("At least one IMEI, ICCID or MDN is required");
+		}
+		if (identifierCount > maxDeviceIdentifierLookup) {
+			throw new BadRequest("Max limit of identifiers " + maxDeviceIdentifierLookup + " exceeded.");
+		}
+		return activationDao.findActivationLinesByDeviceIdentifiers(corpId, imeiValues, iccidValues, mdnValues, userTimezone);
+	}
+
+	private List<String> normalizeDeviceIdentifiers(List<String> identifiers) {
+		if (identifiers == null) {
+			return new ArrayList<>();
+		}
+		return identifiers.stream().filter(StringUtils::isNotBlank).map(StringUtils::trim).distinct()
+				.collect(Collectors.toList());
+	}
+
+	@Override
+	public ActivationHistoryTable getAllActivationHistoryDetailsTable(String corpId, String sortDir,
+			String userTimezone) {
+		sortDir = StringUtils.defaultIfEmpty(sortDir, "DESC");
+		return activationDao.getAllActivationHistoryDetailsTable(corpId, sortDir, userTimezone);
+	}
+
+	@Override
+	public ActivationHistoryTable getActivationTransactionDetailsTable(String transactionId, String corpId,
+			String userTimezone) {
+		return activationDao.getActivationTransactionDetailsTable(transactionId, corpId, userTimezone);
 	}
 
 	@Override
@@ -846,24 +1413,31 @@ public class ActivationServiceImpl implements ActivationService {
 
 	@Override
 	public Integer getRecentActivationHistoryTotalCount(String corpId) {
-		return activationDao.getRecentActivationHistoryTotalCount(corpId);
+		activationTrafficRecorder.recordHistoryRead(ActivationTrafficRecorder.TYPE_HISTORY_COUNT, corpId);
+		return historyFirstPageCache.getTotalCount(corpId, () -> recentTotalCountFlights.execute(corpId, historyReadCacheMillis,
+				() -> activationDao.getRecentActivationHistoryTotalCount(corpId)));
 	}
 
 	@Override
 	public KempEsimInventoryCount getKempEsimInventoryCount(String carrier, String corpId) {
-		return kempManager.getKempEsimInventoryCount(carrier, getMasterCorp(corpId));
+		String masterCorp = getMasterCorp(corpId);
+		return dependencyGuards.kemp().read(() -> kempManager.getKempEsimInventoryCount(carrier, masterCorp));
 	}
 
 	@Override
 	public List<String> getCarriersForESim(SentinelPrincipal principal) {
+		return getCarriersForESim(principal, new ActivationLookupCache(hierarchyManager, corpManager, userManager::getUser, this::getWebFilteringGroups));
+	}
+
+	private List<String> getCarriersForESim(SentinelPrincipal principal, ActivationLookupCache lookups) {
 		Settings settings = userAccessService.getSettings(principal);
 
 		boolean isVerizonBI = settings.getAccess().contains(AccessObjectEnum.VERIZON_BUSINESS_INTERNET_PLAN.getDescription());
 		boolean hasEsimActivation = settings.getAccess().contains(AccessObjectEnum.ESIM_ACTIVATION.getDescription());
 
 		String corpId = principal.getCorpId();
-		CorpSettings corpSettings = corpManager.getCorpSetting(corpId);
-		String businessType = hierarchyManager.getBusinessTypeByCorpId(corpId);
+		CorpSettings corpSettings = lookups.getCorpSetting(corpId);
+		String businessType = lookups.getBusinessTypeByCorpId(corpId);
 		boolean isKPW = Constants.TYPE_KPW.equalsIgnoreCase(businessType);
 
 		String firstResponder = resolveFirstResponder(corpSettings.getFirstResponder(), corpId);
@@ -873,7 +1447,9 @@ public class ActivationServiceImpl implements ActivationService {
 			carrierList = new ArrayList<>(this.getKNECarrierListForActivation());
 			appendDemoCarriersIfApplicable(carrierList, corpId);
 		} else {
-			carrierList = this.getCarrierListForActivation(firstResponder, isVerizonBI, corpId, hasEsimActivation);
+			carrierList = "N".equalsIgnoreCase(firstResponder)
+					? activationDao.getCarrierListForActivation(isVerizonBI, businessType, hasEsimActivation)
+					: activationDao.getCarrierListForActivationFirstResponder(isVerizonBI);
 		}
 
 		reorderCarrier(carrierList);
@@ -0,0 +1,287 @@
+package com.kajeet.sentinel.activation.dao.impl;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schema-qualified SQL for {@link ActivationDaoImpl}, built once at construction. Sorted statements only exist
+ * in ASC and DESC variants, so caller supplied sort directions never reach the SQL text and every call reuses
+ * the same statement for the driver and Oracle statement caches.
+ */
+class ActivationSqlRegistry {
+
+	private static final Logger log = LoggerFactory.getLogger(ActivationSqlRegistry.class);
+
+	static final String ASC = "ASC";
+	static final String DESC = "DESC";
+
+	enum Query {
+		INVENTORY_BY_CARRIER,
+		INVENTORY_PLTE,
+		INVENTORY_3RD_PARTY,
+		KNE_CARRIER_LIST,
+		CARRIER_LIST,
+		CARRIER_LIST_NO_VERIZON_BI,
+		CARRIER_LIST_ESIM,
+		CARRIER_LIST_ESIM_NO_VERIZON_BI,
+		CARRIER_LIST_FIRST_RESPONDER,
+		CARRIER_LIST_FIRST_RESPONDER_NO_VERIZON_BI,
+		TRANSACTION_HISTORY,
+		ALL_HISTORY_DETAILS,
+		HISTORY_EXPORT_PARTITION,
+		HISTORY_EXPORT_PARTITION_FROM,
+		HISTORY_EXPORT_PARTITION_TO,
+		HISTORY_EXPORT_PARTITION_BETWEEN,
+		HISTORY_DATE_RANGE,
+		HISTORY_DELTA,
+		DEVICE_IDENTIFIER_LOOKUP,
+		RECENT_TRANSACTIONS,
+		TRANSACTION_DETAILS,
+		TRANSACTION_DETAILS_BATCH,
+		ACTIVATION_PROGRESS,
+		ACTIVATION_PROGRESS_FOR_CORP,
+		CARRIER_ACCOUNT_ID,
+		CARRIER_BEARER_PATHS,
+		RECENT_HISTORY_COUNT,
+		RECENT_HISTORY_WATERMARK,
+		BUSINESS_INTERNET_PLANS,
+		STAGING_SET_ID,
+		STAGE_ACTIVATION_LINE,
+		DELETE_STAGED_LINES
+	}
+
+	private static final String TRANSACTION_TIMESTAMP = "TO_CHAR(FROM_TZ(cast(DATE_ENTERED as timestamp), substr(entered_timestamp, -6)) AT TIME ZONE \n"
+			+ ":userTimezone, 'MM/dd/yyyy HH:MI:SS AM') transaction_timestamp";
+
+	private final Map<Query, String> statements = new EnumMap<>(Query.class);
+	private final Map<Query, String> ascStatements = new EnumMap<>(Query.class);
+	private final Map<Query, String> descStatements = new EnumMap<>(Query.class);
+
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder sortFallbacks = new LongAdder();
+
+	ActivationSqlRegistry(String dbUser) {
+		String carrierList = "select distinct(carrier) from self_activation_inventory_combined \n where corp_business_type = :businessType ";
+		String firstResponderCarrierList = "select distinct(carrier) from SELF_ACTIVATION_INVENTORY_3RD_PARTY \n";
+		String excludeVerizonBI = "AND CARRIER != 'Verizon BI'\n";
+		String esimOnly = "AND HAS_ESIM_EXPRESS_ENABLED = 'Y'\n";
+
+		statements.put(Query.INVENTORY_BY_CARRIER,
+				"select SKU,PLAN_ID from self_activation_inventory_combined where carrier=:carrier AND corp_business_type=:businessType");
+		statements.put(Query.INVENTORY_PLTE,
+				"select SKU,PLAN_ID from self_activation_inventory_combined where carrier = :carrier and corp_business_type = 'KPW'");
+		statements.put(Query.INVENTORY_3RD_PARTY, "select SKU,\n"
+				+ "		PLAN_ID,\n"
+				+ "		EAST_IP_POOL,\n"
+				+ "		WEST_IP_POOL,\n"
+				+ "		EAST_COMMUNICATION_PLAN,\n"
+				+ "		WEST_COMMUNICATION_PLAN,\n"
+				+ "		SUB_TYPE from SELF_ACTIVATION_INVENTORY_3RD_PARTY where carrier = :carrier ");
+		statements.put(Query.KNE_CARRIER_LIST,
+				"select distinct(carrier) from SELF_ACTIVATION_INVENTORY_COMBINED WHERE corp_business_type = 'KPW' order by CARRIER");
+		statements.put(Query.CARRIER_LIST, carrierList + " order by CARRIER");
+		statements.put(Query.CARRIER_LIST_NO_VERIZON_BI, carrierList + excludeVerizonBI + " order by CARRIER");
+		statements.put(Query.CARRIER_LIST_ESIM, carrierList + esimOnly + " order by CARRIER");
+		statements.put(Query.CARRIER_LIST_ESIM_NO_VERIZON_BI, carrierList + excludeVerizonBI + esimOnly + " order by CARRIER");
+		statements.put(Query.CARRIER_LIST_FIRST_RESPONDER, firstResponderCarrierList + "order by CARRIER");
+		statements.put(Query.CARRIER_LIST_FIRST_RESPONDER_NO_VERIZON_BI,
+				firstResponderCarrierList + "where NOT CARRIER = 'Verizon BI'\n" + "order by CARRIER");
+		String transactionDetails = "SELECT set_transaction_id, device_group, cv.corp_description, service_zip_code, filter_group,\n"
+				+ "			carrier, " + TRANSACTION_TIMESTAMP + ", \n"
+				+ "			act.imei, act.iccid, derived_status, act.mdn, ip, nvl(nickname,'N/A') as nickname\n"
+				+ "			FROM " + dbUser + ".kj4_activation_set_details act\n"
+				+ "			LEFT JOIN " + dbUser + ".KJ4_SERVICE_VIEW5 kjserv5 ON kjserv5.ACTIV_NO = act.ACTIV_NO AND kjserv5.CUST_NO = act.CUST_NO,\n"
+				+ "		    (SELECT CORP_ID, CORP_DESCRIPTION\n"
+				+ "			FROM " + dbUser + ".KJ4_CORP_VIEW\n"
+				+ "			START WITH CORP_ID = :corpId\n"
+				+ "		  	CONNECT BY PRIOR CORP_ID=PARENT_CORP_ID) cv\n"
+				+ "			WHERE act.device_group = cv.corp_id ";
+		statements.put(Query.TRANSACTION_DETAILS, transactionDetails + "AND act.set_transaction_id = :transactionId");
+		statements.put(Query.TRANSACTION_DETAILS_BATCH, transactionDetails
+				+ "AND act.set_transaction_id IN (SELECT column_value FROM TABLE(:transactionIds))\n"
+				+ "			ORDER BY act.set_transaction_id");
+		String activationProgress = "SELECT set_transaction_id, line_count, completed_count, failed_count, pending_count, derived_status, \n"
+				+ "NULL transaction_timestamp FROM " + dbUser + ".kj4_activation_set_view2 \n"
+				+ "WHERE set_transaction_id IN (SELECT column_value FROM TABLE(:transactionIds)) ";
+		statements.put(Query.ACTIVATION_PROGRESS, activationProgress);
+		statements.put(Query.ACTIVATION_PROGRESS_FOR_CORP, activationProgress
+				+ "\nAND corp_id IN (SELECT CORP_ID FROM " + dbUser + ".KJ4_CORP_VIEW START WITH CORP_ID = :corpId \n"
+				+ "CONNECT BY PRIOR CORP_ID=PARENT_CORP_ID)");
+		statements.put(Query.CARRIER_ACCOUNT_ID,
+				"SELECT carrier_account_id FROM corp_carrier_account WHERE carrier = :carrier AND corp_id = :corpId ");
+		statements.put(Query.CARRIER_BEARER_PATHS, "SELECT carrier_friendly_name as carrier_name, bearer_path FROM " + dbUser
+				+ ".kj4_carrier_business_types_view1\n " + "WHERE business_type = :businessType");
+		statements.put(Query.RECENT_HISTORY_COUNT, "SELECT COUNT(*) FROM " + dbUser + ".KJ4_ACTIVATION_SET_VIEW2 \n"
+				+ "WHERE CORP_ID IN (SELECT CORP_ID FROM " + dbUser + ".KJ4_CORP_VIEW START WITH CORP_ID = :corpId \n"
+				+ "CONNECT BY PRIOR CORP_ID=PARENT_CORP_ID) and date_entered >= sysdate - 180");
+		// newest transaction id only: a min/max probe on kj4_activation_set_details (device_group, set_transaction_id),
+		// instead of aggregating the set view like RECENT_HISTORY_COUNT does
+		// latest transaction id, then the number and completed/failed counts of recent transactions still pending,
+		// so both new submissions and status changes on in-flight ones (including one finishing) move the value
+		statements.put(Query.RECENT_HISTORY_WATERMARK, "WITH cv AS (SELECT CORP_ID FROM " + dbUser + ".KJ4_CORP_VIEW \n"
+				+ "START WITH CORP_ID = :corpId CONNECT BY PRIOR CORP_ID=PARENT_CORP_ID) \n"
+				+ "SELECT (SELECT TO_CHAR(NVL(MAX(set_transaction_id), 0)) FROM " + dbUser + ".kj4_activation_set_details \n"
+				+ "		WHERE device_group IN (SELECT corp_id FROM cv)) || ':' || \n"
+				+ "	(SELECT COUNT(*) || ':' || NVL(SUM(completed_count), 0) || ':' || NVL(SUM(failed_count), 0) \n"
+				+ "		FROM " + dbUser + ".kj4_activation_set_view2 \n"
+				+ "		WHERE corp_id IN (SELECT corp_id FROM cv) AND date_entered >= SYSDATE - 180 AND pending_count > 0) \n"
+				+ "FROM dual");
+		statements.put(Query.BUSINESS_INTERNET_PLANS, "SELECT PLAN_ID,"
+				+ "PLAN_DESC,"
+				+ "FRIENDLY_NAME,"
+				+ "WH_PLAN_ID,"
+				+ "CARRIER  FROM  " + dbUser + ".KJ4_VERIZON_TS_3RDP_PLANS_VIEW kvtpv");
+		statements.put(Query.STAGING_SET_ID, "SELECT " + dbUser + "." + ActivationLineStaging.SEQUENCE + ".NEXTVAL FROM DUAL");
+		statements.put(Query.STAGE_ACTIVATION_LINE, ActivationLineStaging.insertSql(dbUser));
+		statements.put(Query.DELETE_STAGED_LINES,
+				"DELETE FROM " + dbUser + "." + ActivationLineStaging.TABLE + " WHERE staging_set_id = ?");
+
+		putSorted(Query.TRANSACTION_HISTORY, "SELECT  set_transaction_id, line_count, completed_count, failed_count, pending_count, derived_status, \n"
+				+ TRANSACTION_TIMESTAMP + " FROM " + dbUser + ".kj4_activation_set \n"
+				+ "WHERE corp_id IN (SELECT CORP_ID FROM " + dbUser + ".KJ4_CORP_VIEW START WITH CORP_ID = :corpId \n"
+				+ "CONNECT BY PRIOR CORP_ID=PARENT_CORP_ID) order by entered_timestamp ", "");
+		String historyDetails = "SELECT asv.set_transaction_id, asv.line_count, asv.completed_count, asv.failed_count, asv.derived_status as transaction_status, \n"
+				+ " TO_CHAR(FROM_TZ(cast(asv.DATE_ENTERED as timestamp), substr(asv.entered_timestamp, -6)) AT TIME ZONE \n"
+				+ ":userTimezone, 'MM/dd/yyyy HH:MI:SS AM') transaction_timestamp, \n"
+				+ " asd.carrier, asd.device_group, cv.corp_description, asd.filter_group, asd.service_zip_code, \n"
+				+ "asd.imei, asd.iccid, asd.mdn, nvl(kjserv5.nickname,'N/A') as nickname, asd.ip, asd.derived_status as line_activation_status \n"
+				+ "			FROM " + dbUser + ".kj4_activation_set_view2 asv\n"
+				+ "			JOIN " + dbUser + ".kj4_activation_set_details asd ON asv.set_transaction_id = asd.set_transaction_id \n"
+				+ "			LEFT JOIN " + dbUser + ".KJ4_SERVICE_VIEW5 kjserv5 ON kjserv5.ACTIV_NO = asd.ACTIV_NO AND kjserv5.CUST_NO = asd.CUST_NO,\n"
+				+ "		    (SELECT CORP_ID, CORP_DESCRIPTION\n"
+				+ "			FROM " + dbUser + ".KJ4_CORP_VIEW\n"
+				+ "			START WITH CORP_ID = :corpId\n"
+				+ "		  	CONNECT BY PRIOR CORP_ID=PARENT_CORP_ID) cv\n"
+				+ "			WHERE asd.device_group = cv.corp_id \n";
+		putSorted(Query.ALL_HISTORY_DETAILS, historyDetails + "			ORDER BY asv.entered_timestamp ", "");
+		// one statement per combination of bounds, so open-ended partitions carry no always-true predicate
+		String fromBound = "			AND asv.date_entered >= :fromDate\n";
+		String toBound = "			AND asv.date_entered < :toDate\n";
+		putSorted(Query.HISTORY_EXPORT_PARTITION, historyDetails + "			ORDER BY asv.entered_timestamp ", "");
+		putSorted(Query.HISTORY_EXPORT_PARTITION_FROM, historyDetails + fromBound + "			ORDER BY asv.entered_timestamp ", "");
+		putSorted(Query.HISTORY_EXPORT_PARTITION_TO, historyDetails + toBound + "			ORDER BY asv.entered_timestamp ", "");
+		putSorted(Query.HISTORY_EXPORT_PARTITION_BETWEEN, historyDetails + fromBound + toBound
+				+ "			ORDER BY asv.entered_timestamp ", "");
+		statements.put(Query.HISTORY_DATE_RANGE, "SELECT MIN(date_entered), MAX(date_entered) FROM " + dbUser + ".kj4_activation_set_view2 \n"
+				+ "WHERE corp_id IN (SELECT CORP_ID FROM " + dbUser + ".KJ4_CORP_VIEW START WITH CORP_ID = :corpId \n"
+				+ "CONNECT BY PRIOR CORP_ID=PARENT_CORP_ID)");
+		// select list matches ALL_HISTORY_DETAILS, followed by date_entered and pending_count for the watermark
+		statements.put(Query.HISTORY_DELTA, "WITH cv AS (SELECT CORP_ID, CORP_DESCRIPTION FROM " + dbUser + ".KJ4_CORP_VIEW\n"
+				+ "			START WITH CORP_ID = :corpId CONNECT BY PRIOR CORP_ID=PARENT_CORP_ID),\n"
+				+ "		new_tx AS (SELECT set_transaction_id FROM " + dbUser + ".kj4_activation_set_view2\n"
+				+ "			WHERE corp_id IN (SELECT corp_id FROM cv)\n"
+				+ "			AND (date_entered > :enteredAfter OR (date_entered = :enteredAfter AND set_transaction_id > :transactionIdAfter))\n"
+				+ "			ORDER BY date_entered, set_transaction_id FETCH FIRST :limit ROWS ONLY),\n"
+				+ "		open_tx AS (SELECT set_transaction_id FROM " + dbUser + ".kj4_activation_set_view2\n"
+				+ "			WHERE corp_id IN (SELECT corp_id FROM cv) AND date_entered >= :openSince\n"
+				+ "			AND (date_entered > :openAfter OR (date_entered = :openAfter AND set_transaction_id > :openTransactionIdAfter))\n"
+				+ "			AND (date_entered < :enteredAfter OR (date_entered = :enteredAfter AND set_transaction_id <= :transactionIdAfter))\n"
+				+ "			ORDER BY date_entered, set_transaction_id FETCH FIRST :limit ROWS ONLY)\n"
+				+ "SELECT asv.set_transaction_id, asv.line_count, asv.completed_count, asv.failed_count, asv.derived_status as transaction_status, \n"
+				+ " TO_CHAR(FROM_TZ(cast(asv.DATE_ENTERED as timestamp), substr(asv.entered_timestamp, -6)) AT TIME ZONE \n"
+				+ ":userTimezone, 'MM/dd/yyyy HH:MI:SS AM') transaction_timestamp, \n"
+				+ " asd.carrier, asd.device_group, cv.corp_description, asd.filter_group, asd.service_zip_code, \n"
+				+ "asd.imei, asd.iccid, asd.mdn, nvl(kjserv5.nickname,'N/A') as nickname, asd.ip, asd.derived_status as line_activation_status, \n"
+				+ "asv.date_entered, asv.pending_count \n"
+				+ "			FROM " + dbUser + ".kj4_activation_set_view2 asv\n"
+				+ "			JOIN " + dbUser + ".kj4_activation_set_details asd ON asv.set_transaction_id = asd.set_transaction_id \n"
+				+ "			JOIN cv ON asd.device_group = cv.corp_id \n"
+				+ "			LEFT JOIN " + dbUser + ".KJ4_SERVICE_VIEW5 kjserv5 ON kjserv5.ACTIV_NO = asd.ACTIV_NO AND kjserv5.CUST_NO = asd.CUST_NO\n"
+				+ "			WHERE asv.set_transaction_id IN (SELECT set_transaction_id FROM new_tx UNION ALL SELECT set_transaction_id FROM open_tx)\n"
+				+ "			ORDER BY asv.date_entered, asv.set_transaction_id");
+		// select list matches ALL_HISTORY_DETAILS, plus entered_timestamp for the ordering. One UNION branch per
+		// identifier type, each driven from its collection into its own index on kj4_activation_set_details
+		// (imei), (iccid) or (mdn); UNION drops lines matched by more than one identifier
+		String deviceIdentifierBranch = "SELECT asv.set_transaction_id, asv.line_count, asv.completed_count, asv.failed_count, asv.derived_status as transaction_status, \n"
+				+ " TO_CHAR(FROM_TZ(cast(asv.DATE_ENTERED as timestamp), substr(asv.entered_timestamp, -6)) AT TIME ZONE \n"
+				+ ":userTimezone, 'MM/dd/yyyy HH:MI:SS AM') transaction_timestamp, \n"
+				+ " asd.carrier, asd.device_group, cv.corp_description, asd.filter_group, asd.service_zip_code, \n"
+				+ "asd.imei, asd.iccid, asd.mdn, nvl(kjserv5.nickname,'N/A') as nickname, asd.ip, asd.derived_status as line_activation_status, \n"
+				+ "asv.entered_timestamp \n"
+				+ "			FROM TABLE(:%1$ss) ids\n"
+				+ "			JOIN " + dbUser + ".kj4_activation_set_details asd ON asd.%1$s = ids.column_value\n"
+				+ "			JOIN cv ON asd.device_group = cv.corp_id \n"
+				+ "			JOIN " + dbUser + ".kj4_activation_set_view2 asv ON asv.set_transaction_id = asd.set_transaction_id \n"
+				+ "			LEFT JOIN " + dbUser + ".KJ4_SERVICE_VIEW5 kjserv5 ON kjserv5.ACTIV_NO = asd.ACTIV_NO AND kjserv5.CUST_NO = asd.CUST_NO\n";
+		statements.put(Query.DEVICE_IDENTIFIER_LOOKUP, "WITH cv AS (SELECT CORP_ID, CORP_DESCRIPTION FROM " + dbUser + ".KJ4_CORP_VIEW\n"
+				+ "			START WITH CORP_ID = :corpId CONNECT BY PRIOR CORP_ID=PARENT_CORP_ID)\n"
+				+ String.format(deviceIdentifierBranch, "imei")
+				+ "UNION\n"
+				+ String.format(deviceIdentifierBranch, "iccid")
+				+ "UNION\n"
+				+ String.format(deviceIdentifierBranch, "mdn")
+				+ "ORDER BY entered_timestamp DESC");
+		putSorted(Query.RECENT_TRANSACTIONS, "SELECT  set_transaction_id, line_count, completed_count, failed_count, pending_count, derived_status, \n"
+				+ TRANSACTION_TIMESTAMP + " FROM " + dbUser
+				+ ".kj4_activation_set_view2 \n" + "WHERE corp_id IN (SELECT CORP_ID FROM " + dbUser
+				+ ".KJ4_CORP_VIEW START WITH CORP_ID = :corpId \n" + "CONNECT BY PRIOR CORP_ID=PARENT_CORP_ID) \n"
+				+ "AND date_entered >= SYSDATE - 180 \n"
+				+ "ORDER BY entered_timestamp ", "\n OFFSET :offset ROWS FETCH FIRST :limit ROWS ONLY");
+	}
+
+	private void putSorted(Query query, String prefix, String suffix) {
+		ascStatements.put(query, prefix + ASC + suffix);
+		descStatements.put(query, prefix + DESC + suffix);
+	}
+
+	String get(Query query) {
+		lookups.increment();
+		return statements.get(query);
+	}
+
+	/**
+	 * Returns the ASC or DESC variant of a sorted statement. Anything other than ASC (ignoring case) is treated
+	 * as DESC, the default sort order for activation history.
+	 */
+	String get(Query query, String sortDir) {
+		lookups.increment();
+		if (ASC.equalsIgnoreCase(sortDir)) {
+			return ascStatements.get(query);
+		}
+		if (!DESC.equalsIgnoreCase(sortDir)) {
+			sortFallbacks.increment();
+			log.warn("Unsupported sortDir: {}, using {}", sortDir, DESC);
+		}
+		return descStatements.get(query);
+	}
+
+	String getCarrierList(boolean isVerizonBI, boolean isEsimEnabled) {
+		if (isEsimEnabled) {
+			return get(isVerizonBI ? Query.CARRIER_LIST_ESIM : Query.CARRIER_LIST_ESIM_NO_VERIZON_BI);
+		}
+		return get(isVerizonBI ? Query.CARRIER_LIST : Query.CARRIER_LIST_NO_VERIZON_BI);
+	}
+
+	/**
+	 * The export partition statement for the bounds that are present.
+	 */
+	static Query getExportPartition(boolean hasFromDate, boolean hasToDate) {
+		if (hasFromDate) {
+			return hasToDate ? Query.HISTORY_EXPORT_PARTITION_BETWEEN : Query.HISTORY_EXPORT_PARTITION_FROM;
+		}
+		return hasToDate ? Query.HISTORY_EXPORT_PARTITION_TO : Query.HISTORY_EXPORT_PARTITION;
+	}
+
+	String getFirstResponderCarrierList(boolean isVerizonBI) {
+		return get(isVerizonBI ? Query.CARRIER_LIST_FIRST_RESPONDER : Query.CARRIER_LIST_FIRST_RESPONDER_NO_VERIZON_BI);
+	}
+
+	/**
+	 * Statements handed out by the registry. This counts map lookups only; it says nothing about driver or
+	 * Oracle statement cache hits, which are reported by the connection pool and v$sql.
+	 */
+	long getLookups() {
+		return lookups.sum();
+	}
+
+	/**
+	 * Sorted lookups with an unsupported sortDir that were served the DESC statement.
+	 */
+	long getSortFallbacks() {
+		return sortFallbacks.sum();
+	}
+}
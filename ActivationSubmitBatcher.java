@@ -0,0 +1,203 @@
+package com.kajeet.sentinel.activation.dao.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Coalesces small activation submissions into one bulk_activate_* call. Requests for the same procedure,
+ * corp and users whose JSON matches apart from the line array are held for a few milliseconds. Then their
+ * lines are submitted as one array, and every caller gets the resulting set_transaction_id. The first caller
+ * of a batch waits out the window and makes the call, so no extra threads are involved. If the combined call
+ * is rejected by the procedure, each request is resubmitted on its own so one bad line does not fail the
+ * others.
+ */
+final class ActivationSubmitBatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(ActivationSubmitBatcher.class);
+
+	private static final String LINES_FIELD = "array";
+
+	/**
+	 * Submits one JSON document to the procedure, returning the transaction id or 0 when rejected.
+	 */
+	interface Submitter {
+		long submit(String activationJson);
+	}
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final boolean enabled;
+	private final long windowMillis;
+	private final int maxRequestLines;
+	private final int maxBatchLines;
+	private final Map<String, Batch> openBatches = new HashMap<>();
+
+	ActivationSubmitBatcher(boolean enabled, long windowMillis, int maxRequestLines, int maxBatchLines) {
+		this.enabled = enabled;
+		this.windowMillis = windowMillis;
+		this.maxRequestLines = maxRequestLines;
+		this.maxBatchLines = maxBatchLines;
+	}
+
+	long submit(String procedureName, String activationJson, String corpId, String logUserId, String catalystUserId,
+			Submitter submitter) {
+		if (!enabled) {
+			return submitter.submit(activationJson);
+		}
+		ObjectNode request = parse(activationJson);
+		JsonNode lines = request == null ? null : request.get(LINES_FIELD);
+		if (lines == null || !lines.isArray() || lines.size() > maxRequestLines) {
+			return submitter.submit(activationJson);
+		}
+		ObjectNode header = request.deepCopy();
+		header.remove(LINES_FIELD);
+		String key = procedureName + '|' + corpId + '|' + logUserId + '|' + catalystUserId + '|' + header;
+
+		Part part = new Part(activationJson, (ArrayNode) lines);
+		Batch batch;
+		boolean leader = false;
+		synchronized (this) {
+			batch = openBatches.get(key);
+			if (batch != null && batch.lines + part.lines.size() > maxBatchLines) {
+				close(key, batch);
+				batch = null;
+			}
+			if (batch == null) {
+				batch = new Batch(header);
+				openBatches.put(key, batch);
+				leader = true;
+			}
+			batch.add(part);
+			if (batch.lines >= maxBatchLines) {
+				close(key, batch);
+			}
+		}
+		if (leader) {
+			awaitWindow(key, batch);
+			flush(procedureName, batch, submitter);
+		}
+		try {
+			return part.result.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private void close(String key, Batch batch) {
+		openBatches.remove(key, batch);
+		batch.closed = true;
+		notifyAll();
+	}
+
+	private synchronized void awaitWindow(String key, Batch batch) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+		try {
+			long remaining;
+			while (!batch.closed && (remaining = deadline - System.nanoTime()) > 0) {
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (!batch.closed) {
+			close(key, batch);
+		}
+	}
+
+	private void flush(String procedureName, Batch batch, Submitter submitter) {
+		if (batch.parts.size() == 1) {
+			submitAlone(batch.parts.get(0), submitter);
+			return;
+		}
+		long transactionId;
+		try {
+			ObjectNode combined = batch.header.deepCopy();
+			ArrayNode lines = combined.putArray(LINES_FIELD);
+			for (Part part : batch.parts) {
+				lines.addAll(part.lines);
+			}
+			transactionId = submitter.submit(mapper.writeValueAsString(combined));
+		} catch (IOException | RuntimeException e) {
+			for (Part part : batch.parts) {
+				part.result.completeExceptionally(e);
+			}
+			return;
+		}
+		if (transactionId != 0) {
+			log.info("Submitted {} activation requests ({} lines) to {} as transaction {}", batch.parts.size(), batch.lines,
+					procedureName, transactionId);
+			for (Part part : batch.parts) {
+				part.result.complete(transactionId);
+			}
+			return;
+		}
+		log.warn("Combined submission of {} activation requests to {} was rejected, submitting them one by one",
+				batch.parts.size(), procedureName);
+		for (Part part : batch.parts) {
+			submitAlone(part, submitter);
+		}
+	}
+
+	private static void submitAlone(Part part, Submitter submitter) {
+		try {
+			part.result.complete(submitter.submit(part.json));
+		} catch (RuntimeException e) {
+			part.result.completeExceptionally(e);
+		}
+	}
+
+	private ObjectNode parse(String activationJson) {
+		try {
+			JsonNode node = mapper.readTree(activationJson);
+			return node instanceof ObjectNode ? (ObjectNode) node : null;
+		} catch (IOException e) {
+			// not ours to reject, the procedure reports it
+			return null;
+		}
+	}
+
+	private static final class Part {
+
+		private final String json;
+		private final ArrayNode lines;
+		private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+		Part(String json, ArrayNode lines) {
+			this.json = json;
+			this.lines = lines;
+		}
+	}
+
+	private static final class Batch {
+
+		private final ObjectNode header;
+		private final List<Part> parts = new ArrayList<>();
+		private int lines;
+		private boolean closed;
+
+		Batch(ObjectNode header) {
+			this.header = header;
+		}
+
+		void add(Part part) {
+			parts.add(part);
+			lines += part.lines.size();
+		}
+	}
+}
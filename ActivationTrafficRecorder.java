@@ -0,0 +1,268 @@
+package com.kajeet.sentinel.activation.service.impl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+/**
+ * Opt-in capture of activation traffic for ActivationTrafficReplayer, which lives with the load tools in the jmh
+ * source set. Each submission or history read is written as one JSON line to a gzip file: capture time, type,
+ * corp and the payload. Device identifiers are replaced with salted pseudonyms that keep their length, digits
+ * and check digit, and free-text personal fields are redacted. The salt is random per run, so pseudonyms are stable within a capture but cannot be reversed.
+ * Writes happen on a background thread; records are dropped rather than blocking a request when it falls behind.
+ */
+@Component
+public class ActivationTrafficRecorder implements DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(ActivationTrafficRecorder.class);
+
+	static final String TYPE_SUBMIT = "SUBMIT";
+	static final String TYPE_ESIM_SUBMIT = "ESIM_SUBMIT";
+	static final String TYPE_SMART_SIM_SUBMIT = "SMART_SIM_SUBMIT";
+	static final String TYPE_MULTI_CARRIER_SUBMIT = "MULTI_CARRIER_SUBMIT";
+	static final String TYPE_RECENT_TRANSACTIONS = "RECENT_TRANSACTIONS";
+	static final String TYPE_HISTORY_COUNT = "HISTORY_COUNT";
+	static final String TYPE_TRANSACTION_DETAILS = "TRANSACTION_DETAILS";
+	static final String TYPE_ALL_HISTORY_DETAILS = "ALL_HISTORY_DETAILS";
+
+	private static final List<String> LUHN_IDENTIFIERS = Arrays.asList("imei", "iccid", "simid");
+	private static final List<String> DIGIT_IDENTIFIERS = Arrays.asList("mdn", "msisdn");
+	private static final List<String> REDACTED_FIELDS = Arrays.asList("nickname", "agencyendusername", "billingaddress",
+			"billingcity", "email", "keyuserid", "firstname", "lastname", "name", "address", "address1", "address2",
+			"streetaddress", "contactname", "contactphone");
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final boolean enabled;
+	private final long maxRecords;
+	private final BlockingQueue<String> queue;
+	private final byte[] salt = new byte[16];
+	private final AtomicLong recorded = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile boolean stopping;
+	private Thread writerThread;
+
+	public ActivationTrafficRecorder(@Value("${activation.capture.enabled:false}") boolean enabled,
+			@Value("${activation.capture.file:${java.io.tmpdir}/activation-capture.jsonl.gz}") String file,
+			@Value("${activation.capture.queueCapacity:10000}") int queueCapacity,
+			@Value("${activation.capture.maxRecords:1000000}") long maxRecords) throws IOException {
+		this.enabled = enabled;
+		this.maxRecords = maxRecords;
+		this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+		if (enabled) {
+			new SecureRandom().nextBytes(salt);
+			Path path = Paths.get(file);
+			if (path.getParent() != null) {
+				Files.createDirectories(path.getParent());
+			}
+			Writer writer = new BufferedWriter(new OutputStreamWriter(
+					new GZIPOutputStream(Files.newOutputStream(path), true), StandardCharsets.UTF_8));
+			writerThread = new Thread(() -> drain(writer), "activation-capture");
+			writerThread.setDaemon(true);
+			writerThread.start();
+			log.warn("Activation traffic capture enabled, writing to {}", path);
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Captures a submission payload. The payload is converted and sanitized on the calling thread, because the
+	 * submit path mutates the request afterwards.
+	 */
+	void recordSubmission(String type, String corpId, Object request) {
+		if (!enabled) {
+			return;
+		}
+		record(type, corpId, sanitize(mapper.valueToTree(request)));
+	}
+
+	/**
+	 * Captures a history read. Parameters are given as name/value pairs.
+	 */
+	void recordHistoryRead(String type, String corpId, Object... parameters) {
+		if (!enabled) {
+			return;
+		}
+		ObjectNode payload = mapper.createObjectNode();
+		for (int i = 0; i + 1 < parameters.length; i += 2) {
+			payload.set(String.valueOf(parameters[i]), mapper.valueToTree(parameters[i + 1]));
+		}
+		record(type, corpId, payload);
+	}
+
+	long getRecorded() {
+		return recorded.get();
+	}
+
+	long getDropped() {
+		return dropped.get();
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		if (writerThread != null) {
+			stopping = true;
+			writerThread.join(TimeUnit.SECONDS.toMillis(5));
+			log.info("Activation traffic capture stopped after {} records, {} dropped", recorded.get(), dropped.get());
+		}
+	}
+
+	private void record(String type, String corpId, JsonNode payload) {
+		if (stopping || recorded.get() >= maxRecords) {
+			dropped.incrementAndGet();
+			return;
+		}
+		ObjectNode line = mapper.createObjectNode();
+		line.put("t", System.currentTimeMillis());
+		line.put("type", type);
+		line.put("corpId", corpId);
+		line.set("payload", payload);
+		try {
+			if (queue.offer(mapper.writeValueAsString(line))) {
+				recorded.incrementAndGet();
+			} else {
+				dropped.incrementAndGet();
+			}
+		} catch (JsonProcessingException e) {
+			log.debug("Could not capture {} request", type, e);
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Writes queued records until the recorder is stopping and the queue is empty, then closes the file, so
+	 * records accepted before shutdown are not lost.
+	 */
+	private void drain(Writer writer) {
+		try (Writer out = writer) {
+			while (!stopping || !queue.isEmpty()) {
+				String line = queue.poll(200, TimeUnit.MILLISECONDS);
+				if (line == null) {
+					out.flush();
+					continue;
+				}
+				out.write(line);
+				out.write('\n');
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.warn("Activation traffic capture interrupted with {} records unwritten", queue.size());
+		} catch (IOException e) {
+			log.error("Activation traffic capture failed, no further requests will be written", e);
+			stopping = true;
+			queue.clear();
+		}
+	}
+
+	private JsonNode sanitize(JsonNode node) {
+		if (node.isObject()) {
+			ObjectNode object = (ObjectNode) node;
+			Iterator<Map.Entry<String, JsonNode>> fields = object.fields();
+			while (fields.hasNext()) {
+				Map.Entry<String, JsonNode> field = fields.next();
+				String name = field.getKey().toLowerCase(Locale.ROOT);
+				JsonNode value = field.getValue();
+				if (value.isTextual() && LUHN_IDENTIFIERS.contains(name)) {
+					field.setValue(new TextNode(pseudonymizeDigits(value.asText(), true)));
+				} else if (value.isTextual() && DIGIT_IDENTIFIERS.contains(name)) {
+					field.setValue(new TextNode(pseudonymizeDigits(value.asText(), false)));
+				} else if (value.isTextual() && REDACTED_FIELDS.contains(name)) {
+					field.setValue(new TextNode("redacted-" + redactionToken(value.asText())));
+				} else {
+					sanitize(value);
+				}
+			}
+		} else if (node.isArray()) {
+			node.forEach(this::sanitize);
+		}
+		return node;
+	}
+
+	/**
+	 * Replaces each digit with one derived from a salted hash of the whole value, leaving other characters in
+	 * place, and optionally recomputes a trailing Luhn check digit so the value still validates.
+	 */
+	private String pseudonymizeDigits(String value, boolean luhn) {
+		byte[] hash = hash(value);
+		char[] chars = value.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			if (Character.isDigit(chars[i])) {
+				chars[i] = (char) ('0' + (hash[i % hash.length] & 0xff) % 10);
+			}
+		}
+		if (luhn && chars.length > 1 && Character.isDigit(chars[chars.length - 1])) {
+			chars[chars.length - 1] = luhnCheckDigit(chars, chars.length - 1);
+		}
+		return new String(chars);
+	}
+
+	private String redactionToken(String value) {
+		byte[] hash = hash(value);
+		StringBuilder token = new StringBuilder(8);
+		for (int i = 0; i < 4; i++) {
+			token.append(String.format("%02x", hash[i]));
+		}
+		return token.toString();
+	}
+
+	private byte[] hash(String value) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(salt);
+			return digest.digest(value.getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static char luhnCheckDigit(char[] digits, int length) {
+		int sum = 0;
+		for (int i = 0; i < length; i++) {
+			char c = digits[length - 1 - i];
+			if (!Character.isDigit(c)) {
+				continue;
+			}
+			int digit = c - '0';
+			if (i % 2 == 0) {
+				digit *= 2;
+				if (digit > 9) {
+					digit -= 9;
+				}
+			}
+			sum += digit;
+		}
+		return (char) ('0' + (10 - sum % 10) % 10);
+	}
+}
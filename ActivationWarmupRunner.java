@@ -0,0 +1,85 @@
+package com.kajeet.sentinel.activation.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import com.kajeet.sentinel.activation.dao.ActivationDao;
+import com.kajeet.sentinel.devicegroup.HierarchyManager;
+import com.kajeet.sentinel.profile.service.CorpManager;
+
+/**
+ * Warms the activation path before the application reports itself ready. Spring Boot only switches readiness
+ * to ACCEPTING_TRAFFIC after all runners complete, so rolling deploys do not route traffic to a cold instance.
+ * Besides the procedures and serializers, the hierarchy and corp setting lookups behind
+ * {@link ActivationLookupCache} are resolved for the corps listed in activation.warmup.corpIds, which fills
+ * the manager-side caches those lookups read from.
+ */
+@Component
+public class ActivationWarmupRunner implements ApplicationRunner {
+
+	private static final Logger log = LoggerFactory.getLogger(ActivationWarmupRunner.class);
+
+	@Autowired
+	private ActivationDao activationDao;
+
+	@Autowired
+	private HierarchyManager hierarchyManager;
+
+	@Autowired
+	private CorpManager corpManager;
+
+	@Value("${activation.warmup.enabled:true}")
+	private boolean warmupEnabled;
+
+	@Value("${activation.warmup.corpIds:}")
+	private String[] warmupCorpIds;
+
+	@Override
+	public void run(ApplicationArguments args) {
+		if (!warmupEnabled) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		boolean complete = true;
+		try {
+			ActivationServiceImpl.warmUpSerializers();
+		} catch (Exception e) {
+			log.warn("Could not warm up activation serializers", e);
+			complete = false;
+		}
+		try {
+			complete &= activationDao.warmUp();
+		} catch (Exception e) {
+			log.warn("Could not warm up activation procedures and queries", e);
+			complete = false;
+		}
+		for (String corpId : warmupCorpIds) {
+			complete &= warmUpLookups(corpId.trim());
+		}
+		if (complete) {
+			log.info("Activation warm-up finished in {} ms", System.currentTimeMillis() - start);
+		} else {
+			log.warn("Activation warm-up finished with failures in {} ms, first requests may be slow",
+					System.currentTimeMillis() - start);
+		}
+	}
+
+	private boolean warmUpLookups(String corpId) {
+		ActivationLookupCache lookups = new ActivationLookupCache(hierarchyManager, corpManager, principal -> null,
+				userName -> null);
+		try {
+			lookups.getBusinessTypeByCorpId(corpId);
+			lookups.getTopLevelOrganization(corpId);
+			lookups.getCorpSetting(corpId);
+			return true;
+		} catch (Exception e) {
+			log.warn("Could not warm up activation lookups for corpId: {}", corpId, e);
+			return false;
+		}
+	}
+}
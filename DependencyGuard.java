@@ -0,0 +1,292 @@
+package com.kajeet.sentinel.activation.service.impl;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import com.kajeet.sentinel.activation.metrics.ActivationMetrics;
+import com.kajeet.sentinel.exception.BadRequest;
+import com.kajeet.sentinel.exception.ForbiddenException;
+import com.kajeet.sentinel.exception.RecordNotFoundException;
+import com.kajeet.sentinel.exception.ServiceUnavailableException;
+
+/**
+ * Bulkhead and circuit breaker around one remote collaborator, plus a timeout for reads. Reads run on a small
+ * dedicated pool so a slow dependency ties up its own threads rather than request threads, and are abandoned
+ * and interrupted after timeoutMillis. After failureThreshold consecutive failures the breaker opens and calls
+ * fail fast for openMillis. Then a single trial call is let through (half open): success closes the breaker,
+ * failure reopens it. Client errors (bad request, forbidden, not found) are passed through and do not count as
+ * failures, and neither do calls rejected because this instance's own bulkhead or pool is full.
+ * Idempotent reads can be hedged: if the first attempt has not answered after hedgeDelayMillis a second one
+ * is started, and whichever succeeds first wins.
+ * Calls that change state run on the caller's thread with no timeout: giving up on one would leave its outcome
+ * unknown while it may still complete remotely, and interrupting it could abandon it half done.
+ */
+class DependencyGuard {
+
+	private static final Logger log = LoggerFactory.getLogger(DependencyGuard.class);
+
+	static final int CLOSED = 0;
+	static final int HALF_OPEN = 1;
+	static final int OPEN = 2;
+
+	private final String name;
+	private final long timeoutMillis;
+	private final long hedgeDelayMillis;
+	private final int failureThreshold;
+	private final long openMillis;
+	private final ActivationMetrics activationMetrics;
+	private final ThreadPoolExecutor executor;
+	private final int maxConcurrentCalls;
+	private final Semaphore callPermits;
+
+	private final AtomicInteger state = new AtomicInteger(CLOSED);
+	private int consecutiveFailures;
+	private long openedAt;
+
+	DependencyGuard(String name, long timeoutMillis, long hedgeDelayMillis, int failureThreshold, long openMillis,
+			int maxConcurrentCalls, ActivationMetrics activationMetrics) {
+		this.name = name;
+		this.timeoutMillis = timeoutMillis;
+		this.hedgeDelayMillis = hedgeDelayMillis;
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.openMillis = openMillis;
+		this.activationMetrics = activationMetrics;
+		this.maxConcurrentCalls = Math.max(1, maxConcurrentCalls);
+		this.callPermits = new Semaphore(this.maxConcurrentCalls);
+		AtomicInteger threadCount = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(0, this.maxConcurrentCalls, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "activation-" + name + "-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		activationMetrics.registerDependency(name, state::get,
+				() -> executor.getActiveCount() + this.maxConcurrentCalls - callPermits.availablePermits());
+	}
+
+	/**
+	 * Runs a call that must not be repeated or abandoned, on the calling thread and without a timeout. It still
+	 * fails fast while the circuit is open or maxConcurrentCalls such calls are in progress.
+	 */
+	<T> T call(Supplier<T> call) {
+		if (!tryAcquire()) {
+			activationMetrics.recordDependencyCall(name, ActivationMetrics.DEPENDENCY_SHORT_CIRCUITED, System.nanoTime());
+			throw unavailable("is unavailable");
+		}
+		long started = System.nanoTime();
+		if (!callPermits.tryAcquire()) {
+			// our own bulkhead is full, which says nothing about the dependency
+			releaseTrial();
+			activationMetrics.recordDependencyCall(name, ActivationMetrics.DEPENDENCY_REJECTED, started);
+			throw unavailable("has too many calls in progress");
+		}
+		try {
+			T value = call.get();
+			onSuccess();
+			activationMetrics.recordDependencyCall(name, ActivationMetrics.DEPENDENCY_SUCCESS, started);
+			return value;
+		} catch (RuntimeException | Error e) {
+			if (isClientError(e)) {
+				onSuccess();
+				activationMetrics.recordDependencyCall(name, ActivationMetrics.DEPENDENCY_SUCCESS, started);
+			} else {
+				onFailure();
+				activationMetrics.recordDependencyCall(name, ActivationMetrics.DEPENDENCY_FAILURE, started);
+			}
+			throw e;
+		} finally {
+			callPermits.release();
+		}
+	}
+
+	/**
+	 * Runs an idempotent read on the guard's pool with a timeout, hedged when a hedge delay is configured.
+	 */
+	<T> T read(Supplier<T> call) {
+		return execute(call, hedgeDelayMillis > 0);
+	}
+
+	int getState() {
+		return state.get();
+	}
+
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private <T> T execute(Supplier<T> call, boolean hedged) {
+		if (!tryAcquire()) {
+			activationMetrics.recordDependencyCall(name, ActivationMetrics.DEPENDENCY_SHORT_CIRCUITED, System.nanoTime());
+			throw unavailable("is unavailable");
+		}
+		long started = System.nanoTime();
+		CompletableFuture<T> result = new CompletableFuture<>();
+		AtomicInteger outstanding = new AtomicInteger();
+		Future<?> primary = null;
+		Future<?> hedge = null;
+		try {
+			primary = submit(call, result, outstanding);
+			T value;
+			if (hedged) {
+				try {
+					value = result.get(Math.min(hedgeDelayMillis, timeoutMillis), TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					try {
+						hedge = submit(call, result, outstanding);
+						log.debug("Hedging slow {} read", name);
+					} catch (RejectedExecutionException full) {
+						// no spare thread for a hedge, keep waiting on the first attempt
+						log.debug("Not hedging slow {} read, pool is busy", name);
+					}
+					value = result.get(Math.max(0, timeoutMillis - hedgeDelayMillis), TimeUnit.MILLISECONDS);
+				}
+			} else {
+				value = result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+			}
+			onSuccess();
+			activationMetrics.recordDependencyCall(name, ActivationMetrics.DEPENDENCY_SUCCESS, started);
+			return value;
+		} catch (TimeoutException e) {
+			onFailure();
+			activationMetrics.recordDependencyCall(name, ActivationMetrics.DEPENDENCY_TIMEOUT, started);
+			throw unavailable("timed out after " + timeoutMillis + " ms");
+		} catch (RejectedExecutionException e) {
+			releaseTrial();
+			activationMetrics.recordDependencyCall(name, ActivationMetrics.DEPENDENCY_REJECTED, started);
+			throw unavailable("has too many calls in progress");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			releaseTrial();
+			throw unavailable("call was interrupted");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (isClientError(cause)) {
+				onSuccess();
+				activationMetrics.recordDependencyCall(name, ActivationMetrics.DEPENDENCY_SUCCESS, started);
+			} else {
+				onFailure();
+				activationMetrics.recordDependencyCall(name, ActivationMetrics.DEPENDENCY_FAILURE, started);
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		} finally {
+			cancel(primary);
+			cancel(hedge);
+		}
+	}
+
+	/**
+	 * Runs the call on the pool with the caller's request attributes, security context and MDC (which carries
+	 * the trace and span ids for log correlation). The first success completes the result; it only fails once
+	 * every launched attempt has failed, so a fast failure of one attempt does not beat a hedge that succeeds.
+	 */
+	private <T> Future<?> submit(Supplier<T> call, CompletableFuture<T> result, AtomicInteger outstanding) {
+		RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+		SecurityContext securityContext = SecurityContextHolder.getContext();
+		Map<String, String> mdc = MDC.getCopyOfContextMap();
+		outstanding.incrementAndGet();
+		try {
+			return executor.submit(() -> attempt(call, result, outstanding, requestAttributes, securityContext, mdc));
+		} catch (RejectedExecutionException e) {
+			outstanding.decrementAndGet();
+			throw e;
+		}
+	}
+
+	private static <T> void attempt(Supplier<T> call, CompletableFuture<T> result, AtomicInteger outstanding,
+			RequestAttributes requestAttributes, SecurityContext securityContext, Map<String, String> mdc) {
+		RequestContextHolder.setRequestAttributes(requestAttributes);
+		SecurityContextHolder.setContext(securityContext);
+		if (mdc != null) {
+			MDC.setContextMap(mdc);
+		}
+		try {
+			result.complete(call.get());
+		} catch (Throwable e) {
+			if (outstanding.decrementAndGet() == 0) {
+				result.completeExceptionally(e);
+			}
+		} finally {
+			RequestContextHolder.resetRequestAttributes();
+			SecurityContextHolder.clearContext();
+			MDC.clear();
+		}
+	}
+
+	private static void cancel(Future<?> future) {
+		if (future != null) {
+			future.cancel(true);
+		}
+	}
+
+	private static boolean isClientError(Throwable e) {
+		return e instanceof BadRequest || e instanceof ForbiddenException || e instanceof RecordNotFoundException;
+	}
+
+	private synchronized boolean tryAcquire() {
+		switch (state.get()) {
+		case CLOSED:
+			return true;
+		case OPEN:
+			if (System.currentTimeMillis() - openedAt < openMillis) {
+				return false;
+			}
+			state.set(HALF_OPEN);
+			log.info("Circuit for {} half open, allowing a trial call", name);
+			return true;
+		default:
+			// a trial call is already in flight
+			return false;
+		}
+	}
+
+	private synchronized void onSuccess() {
+		consecutiveFailures = 0;
+		if (state.getAndSet(CLOSED) != CLOSED) {
+			log.info("Circuit for {} closed", name);
+		}
+	}
+
+	private synchronized void onFailure() {
+		consecutiveFailures++;
+		if (state.get() == HALF_OPEN || (state.get() == CLOSED && consecutiveFailures >= failureThreshold)) {
+			state.set(OPEN);
+			openedAt = System.currentTimeMillis();
+			log.warn("Circuit for {} opened after {} consecutive failures, failing fast for {} ms", name,
+					consecutiveFailures, openMillis);
+		}
+	}
+
+	private synchronized void releaseTrial() {
+		if (state.get() == HALF_OPEN) {
+			state.set(OPEN);
+		}
+	}
+
+	private ServiceUnavailableException unavailable(String reason) {
+		return new ServiceUnavailableException("Activation dependency " + name + " " + reason + ". Please try again later.");
+	}
+}
@@ -0,0 +1,21 @@
+package com.kajeet.sentinel.activation.model;
+
+import java.util.List;
+
+/**
+ * Activation upload spanning several carriers. Each entry is a regular single-carrier request, and entries
+ * for the same carrier are submitted together. The corp, hierarchy, filter group and user lookups are
+ * resolved once for the whole upload.
+ */
+public class MultiCarrierActivationRequest {
+
+	private List<ActivationRequestInfo> activationRequests;
+
+	public List<ActivationRequestInfo> getActivationRequests() {
+		return activationRequests;
+	}
+
+	public void setActivationRequests(List<ActivationRequestInfo> activationRequests) {
+		this.activationRequests = activationRequests;
+	}
+}
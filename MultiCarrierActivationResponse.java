@@ -0,0 +1,31 @@
+package com.kajeet.sentinel.activation.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of a {@link MultiCarrierActivationRequest}, per carrier. A carrier appears in transactionIds when
+ * its lines were submitted and in errors when they were not; the carriers are independent, so one can fail
+ * while the others go through.
+ */
+public class MultiCarrierActivationResponse {
+
+	private Map<String, Long> transactionIds = new LinkedHashMap<>();
+	private Map<String, String> errors = new LinkedHashMap<>();
+
+	public Map<String, Long> getTransactionIds() {
+		return transactionIds;
+	}
+
+	public void setTransactionIds(Map<String, Long> transactionIds) {
+		this.transactionIds = transactionIds;
+	}
+
+	public Map<String, String> getErrors() {
+		return errors;
+	}
+
+	public void setErrors(Map<String, String> errors) {
+		this.errors = errors;
+	}
+}
@@ -0,0 +1,135 @@
+package com.kajeet.sentinel.activation.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Collapses concurrent identical reads into one call. The first caller for a key runs the loader; callers that
+ * arrive while it is running wait for and share its result. With a positive cache window the completed result
+ * keeps being served for that long, which absorbs bursts of identical polls. Results rejected by the
+ * cacheable predicate, and failures, are only shared with callers that were already waiting.
+ * Every caller, the leader included, gets its value through the copier, so callers never share a mutable
+ * result. Expired results are swept while keys are being requested, at most once per cache window.
+ */
+class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+	private final UnaryOperator<V> copier;
+	private final AtomicLong nextSweepAt = new AtomicLong();
+
+	SingleFlight() {
+		this(UnaryOperator.identity());
+	}
+
+	SingleFlight(UnaryOperator<V> copier) {
+		this.copier = copier;
+	}
+
+	/**
+	 * Copier for list results: each caller gets its own list, null stays null.
+	 */
+	static <E> UnaryOperator<List<E>> listCopies() {
+		return list -> list == null ? null : new ArrayList<>(list);
+	}
+
+	V execute(K key, long cacheMillis, Supplier<V> loader) {
+		return execute(key, cacheMillis, loader, value -> true);
+	}
+
+	V execute(K key, long cacheMillis, Supplier<V> loader, Predicate<V> cacheable) {
+		if (cacheMillis > 0) {
+			sweepIfDue(cacheMillis);
+		}
+		while (true) {
+			Flight<V> flight = flights.get(key);
+			if (flight != null && flight.isExpired()) {
+				flights.remove(key, flight);
+				flight = null;
+			}
+			if (flight == null) {
+				Flight<V> created = new Flight<>();
+				flight = flights.putIfAbsent(key, created);
+				if (flight == null) {
+					return copier.apply(lead(key, created, cacheMillis, loader, cacheable));
+				}
+			}
+			if (!flight.isExpired()) {
+				return copier.apply(flight.await());
+			}
+		}
+	}
+
+	int size() {
+		return flights.size();
+	}
+
+	/**
+	 * Drops completed results whose cache window has passed.
+	 */
+	void purgeExpired() {
+		flights.entrySet().removeIf(entry -> entry.getValue().isExpired());
+	}
+
+	private void sweepIfDue(long cacheMillis) {
+		long now = System.currentTimeMillis();
+		long due = nextSweepAt.get();
+		if (now >= due && nextSweepAt.compareAndSet(due, now + cacheMillis)) {
+			purgeExpired();
+		}
+	}
+
+	private V lead(K key, Flight<V> flight, long cacheMillis, Supplier<V> loader, Predicate<V> cacheable) {
+		try {
+			V value = loader.get();
+			long keepMillis = cacheable.test(value) ? cacheMillis : 0;
+			flight.complete(value, keepMillis);
+			if (keepMillis <= 0) {
+				flights.remove(key, flight);
+			}
+			return value;
+		} catch (RuntimeException | Error e) {
+			flights.remove(key, flight);
+			flight.fail(e);
+			throw e;
+		}
+	}
+
+	private static final class Flight<V> {
+
+		private final CompletableFuture<V> result = new CompletableFuture<>();
+		private volatile long expiresAt = Long.MAX_VALUE;
+
+		void complete(V value, long cacheMillis) {
+			expiresAt = System.currentTimeMillis() + Math.max(cacheMillis, 0);
+			result.complete(value);
+		}
+
+		void fail(Throwable t) {
+			expiresAt = 0;
+			result.completeExceptionally(t);
+		}
+
+		boolean isExpired() {
+			return result.isDone() && System.currentTimeMillis() >= expiresAt;
+		}
+
+		V await() {
+			try {
+				return result.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw e;
+			}
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package com.kajeet.sentinel.activation.benchmark;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kajeet.sentinel.account.settings.service.ProvisioningGatewayService;
+import com.kajeet.sentinel.activation.dao.ActivationDao;
+import com.kajeet.sentinel.activation.dao.impl.ActivationReadRouting;
+import com.kajeet.sentinel.activation.enumeration.Carriers;
+import com.kajeet.sentinel.activation.metrics.ActivationMetrics;
+import com.kajeet.sentinel.activation.model.ActivationDetailsDto;
+import com.kajeet.sentinel.activation.model.ActivationInputDto;
+import com.kajeet.sentinel.activation.model.ActivationInventoryInfo;
+import com.kajeet.sentinel.activation.model.ActivationLine;
+import com.kajeet.sentinel.activation.model.ActivationRequestInfo;
+import com.kajeet.sentinel.activation.model.ActivationVerizonBusinessPlan;
+import com.kajeet.sentinel.activation.service.impl.ActivationAdmissionControl;
+import com.kajeet.sentinel.activation.service.impl.ActivationDependencyGuards;
+import com.kajeet.sentinel.activation.service.impl.ActivationHistoryFirstPageCache;
+import com.kajeet.sentinel.activation.service.impl.ActivationIdempotency;
+import com.kajeet.sentinel.activation.service.impl.ActivationProgressPublisher;
+import com.kajeet.sentinel.activation.service.impl.ActivationServiceImpl;
+import com.kajeet.sentinel.activation.service.impl.ActivationTrafficRecorder;
+import com.kajeet.sentinel.auth.model.SentinelPrincipal;
+import com.kajeet.sentinel.devicegroup.HierarchyManager;
+import com.kajeet.sentinel.devicegroup.model.CorpSettings;
+import com.kajeet.sentinel.devicegroup.model.Organization;
+import com.kajeet.sentinel.devices.service.KempManager;
+import com.kajeet.sentinel.profile.service.CorpManager;
+import com.kajeet.sentinel.service.common.UserAccessService;
+import com.kajeet.sentinel.user.manager.UserManager;
+import com.kajeet.sentinel.user.model.User;
+import com.kajeet.sentinel.util.consts.Constants;
+import com.kajeet.sentinel.webfilter.WebFilteringManager;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * CPU cost of building and validating an activation upload, with every collaborator stubbed so only the
+ * service's own work is measured. Run with {@code -prof gc} and divide gc.alloc.rate.norm by lineCount for
+ * allocations per line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActivationSubmitBenchmark {
+
+	private static final String CORP_ID = "BENCH_CORP";
+	private static final String FILTER_GROUP = "bench-filter";
+	private static final String SUB_TYPE = "Primary";
+
+	@Param({ "10", "200", "2000" })
+	private int lineCount;
+
+	@Param({ "Verizon", "Verizon_BI", "ATT", "ATT_FirstNet", "TMO", "US_Cellular", "BELLCANADA" })
+	private String carrier;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private ActivationServiceImpl activationService;
+	private SentinelPrincipal principal;
+	private ActivationRequestInfo activationRequestInfo;
+	private ActivationInputDto activationInputDto;
+
+	@Setup
+	public void setUp() {
+		activationService = new ActivationServiceImpl();
+		stubCollaborators();
+		principal = new SentinelPrincipal("bench@kajeet.com", null, Collections.emptyList(), CORP_ID);
+		activationRequestInfo = buildRequest();
+		activationInputDto = buildInputDto();
+	}
+
+	@Benchmark
+	public Long submitActivationRequest() throws Exception {
+		return activationService.submitActivationRequest(activationRequestInfo, principal);
+	}
+
+	@Benchmark
+	public int validateIccidImei() throws Exception {
+		Map<String, String> iccidImeiMap = new HashMap<>();
+		int valid = 0;
+		for (ActivationLine activationLine : activationRequestInfo.getActivationLines()) {
+			if (activationService.validateIccidImei(activationLine.getImei(), activationLine.getIccid(), iccidImeiMap)) {
+				valid++;
+			}
+		}
+		return valid;
+	}
+
+	@Benchmark
+	public ActivationRequestInfo validateAttFirstNetFields() {
+		activationService.validateAttFirstNetFields(activationRequestInfo);
+		return activationRequestInfo;
+	}
+
+	@Benchmark
+	public String serializeActivationInput() throws Exception {
+		return mapper.writeValueAsString(activationInputDto);
+	}
+
+	private void stubCollaborators() {
+		ActivationInventoryInfo inventoryInfo = new ActivationInventoryInfo();
+		inventoryInfo.setSku("BENCH-SKU");
+		inventoryInfo.setPlanId("BENCH-PLAN");
+		inventoryInfo.setSubTypeList(Collections.singletonList(SUB_TYPE));
+
+		ActivationDao activationDao = mock(ActivationDao.class, invocation -> Long.class
+				.equals(invocation.getMethod().getReturnType()) ? 1L : Mockito.RETURNS_DEFAULTS.answer(invocation));
+		when(activationDao.getActivationInventoryInfoByCarrier(anyString(), anyString())).thenReturn(inventoryInfo);
+		when(activationDao.getActivationInventoryInfoByCarrier3rdParty(anyString())).thenReturn(inventoryInfo);
+		when(activationDao.getCarrierAccountId(anyString(), anyString())).thenReturn("BENCH-ACCOUNT");
+		ActivationVerizonBusinessPlan businessPlan = new ActivationVerizonBusinessPlan();
+		businessPlan.setCarrier(Constants.VERTSVBI);
+		businessPlan.setPlanId("BENCH-PLAN");
+		when(activationDao.getBusinessInternetPlans()).thenReturn(Collections.singletonList(businessPlan));
+
+		Organization organization = mock(Organization.class);
+		when(organization.getCorpId()).thenReturn(CORP_ID);
+		HierarchyManager hierarchyManager = mock(HierarchyManager.class);
+		when(hierarchyManager.getBusinessTypeByCorpId(anyString())).thenReturn(Constants.TYPE_EDUCATION);
+		when(hierarchyManager.getTopLevelOrganization(anyString())).thenReturn(organization);
+
+		CorpSettings corpSettings = new CorpSettings();
+		corpSettings.setFirstResponder("N");
+		CorpManager corpManager = mock(CorpManager.class);
+		when(corpManager.getCorpSetting(anyString())).thenReturn(corpSettings);
+		when(corpManager.addNetsweeperGroupId(anyString())).thenReturn(true);
+
+		WebFilteringManager webFilteringManager = mock(WebFilteringManager.class);
+		when(webFilteringManager.getAllWebFilteringGroupsForUser(anyString())).thenAnswer(invocation ->
+				Set.class.isAssignableFrom(invocation.getMethod().getReturnType())
+						? Collections.singleton(FILTER_GROUP) : Collections.singletonList(FILTER_GROUP));
+
+		User user = new User();
+		user.setEmail("bench@kajeet.com");
+		UserManager userManager = mock(UserManager.class);
+		when(userManager.getUser(Mockito.any())).thenReturn(user);
+
+		ReflectionTestUtils.setField(activationService, "activationDao", activationDao);
+		ReflectionTestUtils.setField(activationService, "hierarchyManager", hierarchyManager);
+		ReflectionTestUtils.setField(activationService, "corpManager", corpManager);
+		ReflectionTestUtils.setField(activationService, "webFilteringManagerProxy", webFilteringManager);
+		ReflectionTestUtils.setField(activationService, "userManager", userManager);
+		ReflectionTestUtils.setField(activationService, "userAccessService", mock(UserAccessService.class));
+		ReflectionTestUtils.setField(activationService, "provisioningGatewayService", mock(ProvisioningGatewayService.class));
+		ReflectionTestUtils.setField(activationService, "kempManager", mock(KempManager.class));
+		ReflectionTestUtils.setField(activationService, "historyFirstPageCache", mock(ActivationHistoryFirstPageCache.class));
+		ReflectionTestUtils.setField(activationService, "activationProgressPublisher", mock(ActivationProgressPublisher.class));
+		ReflectionTestUtils.setField(activationService, "activationReadRouting", mock(ActivationReadRouting.class));
+		ActivationMetrics activationMetrics = new ActivationMetrics(new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(activationService, "activationMetrics", activationMetrics);
+		ReflectionTestUtils.setField(activationService, "activationTrafficRecorder", mock(ActivationTrafficRecorder.class));
+		ReflectionTestUtils.setField(activationService, "activationAdmissionControl", mock(ActivationAdmissionControl.class));
+		ReflectionTestUtils.setField(activationService, "dependencyGuards",
+				new ActivationDependencyGuards(new MockEnvironment(), activationMetrics));
+		// every invocation submits the same batch, so deduplication has to be off
+		ReflectionTestUtils.setField(activationService, "activationIdempotency", new ActivationIdempotency(false, 0));
+		ReflectionTestUtils.setField(activationService, "maxActivationRowsCount", 2000);
+		ReflectionTestUtils.setField(activationService, "verizonCarrierSku", "BENCH-SKU");
+		ReflectionTestUtils.setField(activationService, "verizonPriorityCarrierSku", "BENCH-SKU");
+	}
+
+	private ActivationRequestInfo buildRequest() {
+		ActivationRequestInfo request = new ActivationRequestInfo();
+		request.setCarrier(Carriers.valueOf(carrier).getDescription());
+		request.setDeviceGroup(CORP_ID);
+		request.setFilterGroup(FILTER_GROUP);
+		request.setServiceZipCode("20190-1234");
+		request.setActivationLocation("East");
+		request.setPlanId("BENCH-PLAN");
+		request.setAgencyEndUserName("Bench Agency");
+		request.setBillingAddress("1 Bench Way");
+		request.setBillingCity("Reston");
+		request.setBillingState("VA");
+		request.setSubType(SUB_TYPE);
+
+		List<ActivationLine> lines = new ArrayList<>(lineCount);
+		for (int i = 0; i < lineCount; i++) {
+			ActivationLine line = new ActivationLine();
+			line.setImei(withLuhnDigit(String.format("35000000%06d", i)));
+			line.setIccid(withLuhnDigit(String.format("890100000000%06d", i)));
+			line.setNickname("line-" + i);
+			lines.add(line);
+		}
+		request.setActivationLines(lines);
+		return request;
+	}
+
+	private ActivationInputDto buildInputDto() {
+		List<ActivationDetailsDto> details = new ArrayList<>(lineCount);
+		for (ActivationLine line : activationRequestInfo.getActivationLines()) {
+			ActivationDetailsDto activationInfo = new ActivationDetailsDto();
+			activationInfo.setImei(line.getImei());
+			activationInfo.setIccid(line.getIccid());
+			activationInfo.setNickname(line.getNickname());
+			activationInfo.setFilterGroup(FILTER_GROUP);
+			activationInfo.setDeviceGroup(CORP_ID);
+			activationInfo.setZipCode(activationRequestInfo.getServiceZipCode());
+			details.add(activationInfo);
+		}
+		ActivationInputDto inputDto = new ActivationInputDto();
+		inputDto.setArray(details);
+		return inputDto;
+	}
+
+	private static String withLuhnDigit(String digits) {
+		int sum = 0;
+		for (int i = 0; i < digits.length(); i++) {
+			int digit = digits.charAt(digits.length() - 1 - i) - '0';
+			if (i % 2 == 0) {
+				digit *= 2;
+				if (digit > 9) {
+					digit -= 9;
+				}
+			}
+			sum += digit;
+		}
+		return digits + (10 - sum % 10) % 10;
+	}
+}
@@ -0,0 +1,363 @@
+package com.kajeet.sentinel.activation.dao.impl;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.kajeet.sentinel.activation.metrics.ActivationMetrics;
+import com.kajeet.sentinel.config.Constants;
+import com.kajeet.sentinel.model.CatalystResult;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Drives {@link ActivationDaoImpl} against {@link EmbeddedActivationDatabase} with concurrent submissions and
+ * history reads, then reports throughput, latency percentiles and connection-pool saturation. The DAO runs
+ * unchanged apart from its statements, which are swapped for the H2 dialect, and its bulk_activate_* calls,
+ * which go to a stub alias behind the same per-procedure permits. It lives in the jmh source set, in the
+ * DAO's package so it can swap the package-private procedure calls and SQL registry.
+ *
+ * Configured with system properties, for example:
+ * -Dharness.threads=32 -Dharness.durationSeconds=60 -Dharness.submitPercent=20 -Dharness.poolSize=10
+ * -Dharness.procedureLatencyMillis=200 -Dharness.procedureFailurePercent=2 -Dharness.corps=85
+ */
+public final class ActivationLoadHarness {
+
+	enum Operation {
+		SUBMIT, RECENT_TRANSACTIONS, HISTORY_COUNT, TRANSACTION_DETAILS, INVENTORY
+	}
+
+	private static final String TIME_ZONE = "US/Eastern";
+
+	private final int threads = Integer.getInteger("harness.threads", 32);
+	private final int durationSeconds = Integer.getInteger("harness.durationSeconds", 60);
+	private final int submitPercent = Integer.getInteger("harness.submitPercent", 20);
+	private final int linesPerSubmit = Integer.getInteger("harness.linesPerSubmit", 50);
+	private final int poolSize = Integer.getInteger("harness.poolSize", 10);
+	private final int procedureMaxConcurrent = Integer.getInteger("harness.procedureMaxConcurrent", 5);
+	private final int corps = Integer.getInteger("harness.corps", 85);
+	private final int transactionsPerCorp = Integer.getInteger("harness.transactionsPerCorp", 200);
+	private final int linesPerTransaction = Integer.getInteger("harness.linesPerTransaction", 20);
+
+	private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+	private final AtomicLong seededTransactions = new AtomicLong();
+
+	public static void main(String[] args) throws Exception {
+		new ActivationLoadHarness().run();
+	}
+
+	private ActivationLoadHarness() {
+		EmbeddedActivationDatabase.procedureLatencyMillis = Long.getLong("harness.procedureLatencyMillis", 200);
+		EmbeddedActivationDatabase.procedureFailurePercent = Integer.getInteger("harness.procedureFailurePercent", 2);
+		EmbeddedActivationDatabase.procedureFailureCode = Integer.getInteger("harness.procedureResultCode", -20001);
+		for (Operation operation : Operation.values()) {
+			errors.put(operation, new LongAdder());
+		}
+	}
+
+	private void run() throws Exception {
+		try (HikariDataSource dataSource = EmbeddedActivationDatabase.createDataSource(poolSize,
+				Long.getLong("harness.connectionTimeoutMillis", 30000))) {
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+			EmbeddedActivationDatabase.createSchema(jdbcTemplate);
+			long seedStarted = System.nanoTime();
+			EmbeddedActivationDatabase.seed(jdbcTemplate, corps, transactionsPerCorp, linesPerTransaction);
+			seededTransactions.set((long) corps * transactionsPerCorp);
+			System.out.printf("Seeded %d corps, %d transactions, %d lines in %d ms%n", corps, seededTransactions.get(),
+					seededTransactions.get() * linesPerTransaction, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seedStarted));
+
+			ActivationDaoImpl activationDao = createDao(jdbcTemplate, dataSource);
+			checkQueries(activationDao);
+
+			ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+			PoolSampler poolSampler = new PoolSampler(dataSource.getHikariPoolMXBean(), poolSize);
+			sampler.scheduleAtFixedRate(poolSampler, 0, 50, TimeUnit.MILLISECONDS);
+
+			List<Worker> workers = new ArrayList<>(threads);
+			CountDownLatch done = new CountDownLatch(threads);
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+			for (int i = 0; i < threads; i++) {
+				Worker worker = new Worker(activationDao, deadline, done);
+				workers.add(worker);
+				Thread thread = new Thread(worker, "activation-load-" + i);
+				thread.start();
+			}
+			done.await();
+			sampler.shutdownNow();
+
+			report(workers, poolSampler);
+		}
+	}
+
+	private ActivationDaoImpl createDao(JdbcTemplate jdbcTemplate, DataSource dataSource) throws IllegalAccessException {
+		Constants constants = mock(Constants.class);
+		when(constants.getKjdbDbUser()).thenReturn("");
+		MockEnvironment environment = new MockEnvironment()
+				.withProperty("activation.procedure.maxConcurrent", String.valueOf(procedureMaxConcurrent))
+				.withProperty("activation.procedure.acquireTimeoutMillis", System.getProperty("harness.procedureAcquireTimeoutMillis", "30000"));
+		ActivationMetrics metrics = new ActivationMetrics(new SimpleMeterRegistry());
+		ActivationReadRouting readRouting = new ActivationReadRouting(jdbcTemplate,
+				new DefaultListableBeanFactory().getBeanProvider(DataSource.class), 0, 1000);
+		ActivationDaoImpl activationDao = new ActivationDaoImpl(jdbcTemplate, constants, environment, readRouting, metrics);
+
+		for (Field field : ActivationDaoImpl.class.getDeclaredFields()) {
+			field.setAccessible(true);
+			if (field.getType() == ActivationProcedureCall.class) {
+				ActivationProcedureCall original = (ActivationProcedureCall) field.get(activationDao);
+				field.set(activationDao, new StubProcedureCall(dataSource, original.getProcedureName(), procedureMaxConcurrent,
+						Long.getLong("harness.procedureAcquireTimeoutMillis", 30000),
+						metrics.procedure("stub", original.getProcedureName())));
+			} else if (field.getType() == ActivationSqlRegistry.class) {
+				field.set(activationDao, new EmbeddedActivationDatabase.SqlRegistry());
+			}
+		}
+		return activationDao;
+	}
+
+	/**
+	 * The DAO logs and swallows query failures, so make sure every driven read returns rows before timing it.
+	 */
+	private void checkQueries(ActivationDaoImpl activationDao) {
+		String corpId = EmbeddedActivationDatabase.corpId(0);
+		boolean ok = !activationDao.getRecentActivationTransactions(corpId, 0, 25, "DESC", TIME_ZONE).isEmpty()
+				&& activationDao.getRecentActivationHistoryTotalCount(corpId) > 0
+				&& !activationDao.getActivationTransactionDetails("1", corpId, TIME_ZONE).isEmpty()
+				&& activationDao.getActivationInventoryInfoByCarrier(EmbeddedActivationDatabase.CARRIERS[0], "education") != null;
+		if (!ok) {
+			throw new IllegalStateException("Embedded activation queries returned no rows; check the H2 statements");
+		}
+	}
+
+	private void report(List<Worker> workers, PoolSampler poolSampler) {
+		System.out.printf("%n%d threads for %d s, pool size %d, procedure permits %d, procedure latency %d ms%n", threads,
+				durationSeconds, poolSize, procedureMaxConcurrent, EmbeddedActivationDatabase.procedureLatencyMillis);
+		System.out.printf("%-20s %10s %10s %8s %8s %8s %8s %8s %8s%n", "operation", "count", "ops/s", "errors", "p50 ms",
+				"p90 ms", "p99 ms", "p99.9 ms", "max ms");
+		for (Operation operation : Operation.values()) {
+			LongList latencies = new LongList();
+			for (Worker worker : workers) {
+				latencies.addAll(worker.latencies.get(operation));
+			}
+			long[] sorted = latencies.sorted();
+			System.out.printf("%-20s %10d %10.1f %8d %8.1f %8.1f %8.1f %8.1f %8.1f%n", operation, sorted.length,
+					sorted.length / (double) durationSeconds, errors.get(operation).sum(), millis(sorted, 0.50),
+					millis(sorted, 0.90), millis(sorted, 0.99), millis(sorted, 0.999), millis(sorted, 1.0));
+		}
+		System.out.printf("%nPool: max active %d/%d, saturated %.1f%% of samples, waiting threads avg %.1f max %d%n",
+				poolSampler.maxActive, poolSize, poolSampler.saturatedPercent(), poolSampler.averageWaiting(),
+				poolSampler.maxWaiting);
+	}
+
+	private static double millis(long[] sorted, double percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+		return sorted[Math.max(0, index)] / 1_000_000.0;
+	}
+
+	private final class Worker implements Runnable {
+
+		private final ActivationDaoImpl activationDao;
+		private final long deadline;
+		private final CountDownLatch done;
+		private final Map<Operation, LongList> latencies = new EnumMap<>(Operation.class);
+
+		Worker(ActivationDaoImpl activationDao, long deadline, CountDownLatch done) {
+			this.activationDao = activationDao;
+			this.deadline = deadline;
+			this.done = done;
+			for (Operation operation : Operation.values()) {
+				latencies.put(operation, new LongList());
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (System.nanoTime() < deadline) {
+					Operation operation = random.nextInt(100) < submitPercent ? Operation.SUBMIT
+							: Operation.values()[1 + random.nextInt(Operation.values().length - 1)];
+					String corpId = EmbeddedActivationDatabase.corpId(random.nextInt(corps));
+					long started = System.nanoTime();
+					try {
+						execute(operation, corpId, random);
+					} catch (RuntimeException e) {
+						errors.get(operation).increment();
+					}
+					latencies.get(operation).add(System.nanoTime() - started);
+				}
+			} finally {
+				done.countDown();
+			}
+		}
+
+		private void execute(Operation operation, String corpId, ThreadLocalRandom random) {
+			switch (operation) {
+				case SUBMIT:
+					long transactionId = submit(corpId, random);
+					if (transactionId == 0) {
+						errors.get(operation).increment();
+					}
+					break;
+				case RECENT_TRANSACTIONS:
+					activationDao.getRecentActivationTransactions(corpId, 0, 25, "DESC", TIME_ZONE);
+					break;
+				case HISTORY_COUNT:
+					activationDao.getRecentActivationHistoryTotalCount(corpId);
+					break;
+				case TRANSACTION_DETAILS:
+					activationDao.getActivationTransactionDetails(
+							String.valueOf(1 + random.nextLong(seededTransactions.get())), corpId, TIME_ZONE);
+					break;
+				default:
+					activationDao.getActivationInventoryInfoByCarrier(
+							EmbeddedActivationDatabase.CARRIERS[random.nextInt(EmbeddedActivationDatabase.CARRIERS.length)],
+							"education");
+					break;
+			}
+		}
+
+		private long submit(String corpId, ThreadLocalRandom random) {
+			String json = buildActivationJson(corpId);
+			switch (random.nextInt(4)) {
+				case 0:
+					return activationDao.submitVerizonActivationRequest(json, corpId, "load", "load");
+				case 1:
+					return activationDao.submitATTActivationRequest(json, corpId, "load", "load");
+				case 2:
+					return activationDao.submitTMOActivationRequest(json, corpId, "load", "load");
+				default:
+					return activationDao.submitUSCActivationRequest(json, corpId, "load", "load");
+			}
+		}
+
+		private String buildActivationJson(String corpId) {
+			StringBuilder json = new StringBuilder("{\"array\":[");
+			for (int line = 0; line < linesPerSubmit; line++) {
+				if (line > 0) {
+					json.append(',');
+				}
+				json.append("{\"iccid\":\"8901").append(line).append("\",\"deviceGroup\":\"").append(corpId).append("\"}");
+			}
+			return json.append("]}").toString();
+		}
+	}
+
+	/**
+	 * Routes the procedure to bulk_activate_stub on the same pool, keeping the DAO's permits, timers and
+	 * output parsing in the path.
+	 */
+	private static final class StubProcedureCall extends ActivationProcedureCall {
+
+		private final JdbcTemplate jdbcTemplate;
+
+		StubProcedureCall(DataSource dataSource, String procedureName, int maxConcurrent, long acquireTimeoutMillis,
+				ActivationMetrics.ProcedureMeters meters) {
+			super(dataSource, "", procedureName, maxConcurrent, 0, acquireTimeoutMillis, meters);
+			this.jdbcTemplate = new JdbcTemplate(dataSource);
+		}
+
+		@Override
+		Map<String, Object> call(SqlParameterSource params) {
+			Long result = jdbcTemplate.queryForObject("CALL bulk_activate_stub(?, ?, ?)", Long.class, getProcedureName(),
+					params.getValue("p_corp_id"), params.getValue("p_json"));
+			Map<String, Object> output = new HashMap<>();
+			if (result != null && result > 0) {
+				output.put(CatalystResult.P_RESULT_CODE, BigDecimal.ZERO);
+				output.put("P_SET_TRANSACTION_ID", BigDecimal.valueOf(result));
+			} else {
+				output.put(CatalystResult.P_RESULT_CODE, BigDecimal.valueOf(result == null ? -1 : result));
+				output.put(CatalystResult.P_PROBLEM_DESC, "Stub failure");
+			}
+			return output;
+		}
+	}
+
+	private static final class PoolSampler implements Runnable {
+
+		private final HikariPoolMXBean pool;
+		private final int poolSize;
+		private long samples;
+		private long saturatedSamples;
+		private long waitingTotal;
+		private volatile int maxActive;
+		private volatile int maxWaiting;
+
+		PoolSampler(HikariPoolMXBean pool, int poolSize) {
+			this.pool = pool;
+			this.poolSize = poolSize;
+		}
+
+		@Override
+		public synchronized void run() {
+			int active = pool.getActiveConnections();
+			int waiting = pool.getThreadsAwaitingConnection();
+			samples++;
+			waitingTotal += waiting;
+			if (active >= poolSize) {
+				saturatedSamples++;
+			}
+			maxActive = Math.max(maxActive, active);
+			maxWaiting = Math.max(maxWaiting, waiting);
+		}
+
+		synchronized double saturatedPercent() {
+			return samples == 0 ? 0 : saturatedSamples * 100.0 / samples;
+		}
+
+		synchronized double averageWaiting() {
+			return samples == 0 ? 0 : waitingTotal / (double) samples;
+		}
+	}
+
+	private static final class LongList {
+
+		private long[] values = new long[1024];
+		private int size;
+
+		void add(long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		void addAll(LongList other) {
+			for (int i = 0; i < other.size; i++) {
+				add(other.values[i]);
+			}
+		}
+
+		long[] sorted() {
+			long[] copy = Arrays.copyOf(values, size);
+			Arrays.sort(copy);
+			return copy;
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package com.kajeet.sentinel.activation.dao.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * H2 in Oracle compatibility mode standing in for KJDB in the load harness. Creates the activation tables
+ * and views the DAO reads, seeds a corp hierarchy with history, and registers a bulk_activate stub whose
+ * latency and failure rate are set by the harness.
+ */
+final class EmbeddedActivationDatabase {
+
+	static final String CORP_PREFIX = "LOADCORP";
+	static final String FILTER_GROUP = "load-filter";
+	static final String[] CARRIERS = { "Verizon", "AT&T", "T-Mobile", "US Cellular" };
+
+	static volatile long procedureLatencyMillis;
+	static volatile int procedureFailurePercent;
+	static volatile int procedureFailureCode = -20001;
+
+	private static final String TIMESTAMP_FORMAT = "FORMATDATETIME(%s, 'MM/dd/yyyy hh:mm:ss a')";
+	private static final String CORP_HIERARCHY = "WITH RECURSIVE cv(corp_id, corp_description) AS (\n"
+			+ "		SELECT corp_id, corp_description FROM kj4_corp_view WHERE corp_id = :corpId\n"
+			+ "		UNION ALL SELECT c.corp_id, c.corp_description FROM kj4_corp_view c JOIN cv ON c.parent_corp_id = cv.corp_id)\n";
+
+	private EmbeddedActivationDatabase() {
+	}
+
+	static HikariDataSource createDataSource(int poolSize, long connectionTimeoutMillis) {
+		HikariConfig config = new HikariConfig();
+		config.setJdbcUrl("jdbc:h2:mem:activation;MODE=Oracle;DB_CLOSE_DELAY=-1");
+		config.setUsername("sa");
+		config.setMaximumPoolSize(poolSize);
+		config.setMinimumIdle(poolSize);
+		config.setConnectionTimeout(connectionTimeoutMillis);
+		config.setPoolName("activation-load");
+		return new HikariDataSource(config);
+	}
+
+	static void createSchema(JdbcTemplate jdbcTemplate) {
+		jdbcTemplate.execute("CREATE SEQUENCE activation_set_seq START WITH 1000000");
+		jdbcTemplate.execute("CREATE TABLE kj4_corp_view (corp_id VARCHAR2(32) PRIMARY KEY, parent_corp_id VARCHAR2(32), "
+				+ "corp_description VARCHAR2(100))");
+		jdbcTemplate.execute("CREATE INDEX kj4_corp_view_parent ON kj4_corp_view (parent_corp_id)");
+		jdbcTemplate.execute("CREATE TABLE self_activation_inventory_combined (carrier VARCHAR2(50), "
+				+ "corp_business_type VARCHAR2(20), sku VARCHAR2(50), plan_id VARCHAR2(50), has_esim_express_enabled CHAR(1))");
+		jdbcTemplate.execute("CREATE TABLE kj4_activation_set_view2 (set_transaction_id NUMBER PRIMARY KEY, "
+				+ "corp_id VARCHAR2(32), line_count NUMBER, completed_count NUMBER, failed_count NUMBER, pending_count NUMBER, "
+				+ "derived_status VARCHAR2(30), date_entered TIMESTAMP)");
+		jdbcTemplate.execute("CREATE INDEX kj4_activation_set_corp ON kj4_activation_set_view2 (corp_id, date_entered)");
+		jdbcTemplate.execute("CREATE TABLE kj4_activation_set_details (set_transaction_id NUMBER, device_group VARCHAR2(32), "
+				+ "service_zip_code VARCHAR2(10), filter_group VARCHAR2(50), carrier VARCHAR2(50), imei VARCHAR2(20), "
+				+ "iccid VARCHAR2(22), mdn VARCHAR2(15), ip VARCHAR2(40), derived_status VARCHAR2(30), nickname VARCHAR2(50))");
+		jdbcTemplate.execute("CREATE INDEX kj4_activation_set_details_tx ON kj4_activation_set_details (set_transaction_id)");
+		jdbcTemplate.execute("CREATE INDEX kj4_activation_set_details_corp ON kj4_activation_set_details (device_group, set_transaction_id)");
+		jdbcTemplate.execute("CREATE INDEX kj4_activation_set_details_imei ON kj4_activation_set_details (imei)");
+		jdbcTemplate.execute("CREATE INDEX kj4_activation_set_details_iccid ON kj4_activation_set_details (iccid)");
+		jdbcTemplate.execute("CREATE INDEX kj4_activation_set_details_mdn ON kj4_activation_set_details (mdn)");
+		jdbcTemplate.execute("CREATE ALIAS bulk_activate_stub FOR \"" + EmbeddedActivationDatabase.class.getName()
+				+ ".bulkActivate\"");
+	}
+
+	/**
+	 * Seeds a corp tree with a fan-out of four and spreads each corp's history over the last 170 days.
+	 */
+	static void seed(JdbcTemplate jdbcTemplate, int corps, int transactionsPerCorp, int linesPerTransaction) {
+		List<Object[]> corpRows = new ArrayList<>(corps);
+		for (int corp = 0; corp < corps; corp++) {
+			corpRows.add(new Object[] { corpId(corp), corp == 0 ? null : corpId((corp - 1) / 4), "Load corp " + corp });
+		}
+		jdbcTemplate.batchUpdate("INSERT INTO kj4_corp_view VALUES (?, ?, ?)", corpRows);
+
+		List<Object[]> inventoryRows = new ArrayList<>();
+		for (String carrier : CARRIERS) {
+			inventoryRows.add(new Object[] { carrier, "EDUCATION", "SKU-" + carrier, "PLAN-" + carrier, "Y" });
+		}
+		jdbcTemplate.batchUpdate("INSERT INTO self_activation_inventory_combined VALUES (?, ?, ?, ?, ?)", inventoryRows);
+
+		long now = System.currentTimeMillis();
+		long transactionId = 1;
+		for (int corp = 0; corp < corps; corp++) {
+			List<Object[]> transactions = new ArrayList<>(transactionsPerCorp);
+			List<Object[]> lines = new ArrayList<>(transactionsPerCorp * linesPerTransaction);
+			for (int t = 0; t < transactionsPerCorp; t++, transactionId++) {
+				long enteredAt = now - ThreadLocalRandom.current().nextLong(TimeUnit.DAYS.toMillis(170));
+				transactions.add(new Object[] { transactionId, corpId(corp), linesPerTransaction, linesPerTransaction, 0, 0,
+						"COMPLETED", new Timestamp(enteredAt) });
+				String carrier = CARRIERS[(int) (transactionId % CARRIERS.length)];
+				for (int line = 0; line < linesPerTransaction; line++) {
+					String serial = String.format("%08d%04d", transactionId, line);
+					lines.add(new Object[] { transactionId, corpId(corp), "20190", FILTER_GROUP, carrier, "35" + serial + "0",
+							"8901" + serial + "0000", "571" + serial.substring(5), "10.0.0." + line % 250, "ACTIVE",
+							"line-" + line });
+				}
+			}
+			jdbcTemplate.batchUpdate("INSERT INTO kj4_activation_set_view2 VALUES (?, ?, ?, ?, ?, ?, ?, ?)", transactions);
+			jdbcTemplate.batchUpdate("INSERT INTO kj4_activation_set_details VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", lines);
+		}
+	}
+
+	static String corpId(int corp) {
+		return CORP_PREFIX + corp;
+	}
+
+	/**
+	 * Body of the bulk_activate_stub alias. Holds its connection for the configured latency, then either
+	 * records the transaction and returns its id or returns the negated failure code.
+	 */
+	public static long bulkActivate(Connection connection, String procedureName, String corpId, String activationJson)
+			throws SQLException {
+		try {
+			Thread.sleep(procedureLatencyMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted in " + procedureName, e);
+		}
+		if (ThreadLocalRandom.current().nextInt(100) < procedureFailurePercent) {
+			return -Math.abs(procedureFailureCode);
+		}
+		long transactionId;
+		try (PreparedStatement statement = connection.prepareStatement("SELECT activation_set_seq.NEXTVAL FROM dual");
+				ResultSet resultSet = statement.executeQuery()) {
+			resultSet.next();
+			transactionId = resultSet.getLong(1);
+		}
+		int lineCount = Math.max(1, activationJson.split("\"iccid\"", -1).length - 1);
+		try (PreparedStatement statement = connection.prepareStatement(
+				"INSERT INTO kj4_activation_set_view2 VALUES (?, ?, ?, 0, 0, ?, 'IN PROGRESS', CURRENT_TIMESTAMP)")) {
+			statement.setLong(1, transactionId);
+			statement.setString(2, corpId);
+			statement.setInt(3, lineCount);
+			statement.setInt(4, lineCount);
+			statement.executeUpdate();
+		}
+		return transactionId;
+	}
+
+	/**
+	 * H2 dialect statements for the queries the harness drives. CONNECT BY and FROM_TZ are not available, so
+	 * the hierarchy becomes a recursive CTE and timestamps are formatted without a zone conversion.
+	 */
+	static final class SqlRegistry extends ActivationSqlRegistry {
+
+		private final Map<Query, String> statements = new EnumMap<>(Query.class);
+		private final Map<Query, String> ascStatements = new EnumMap<>(Query.class);
+		private final Map<Query, String> descStatements = new EnumMap<>(Query.class);
+
+		SqlRegistry() {
+			super("");
+			String recent = CORP_HIERARCHY + "SELECT set_transaction_id, line_count, completed_count, failed_count, pending_count, "
+					+ "derived_status, " + String.format(TIMESTAMP_FORMAT, "date_entered") + "\n"
+					+ "		FROM kj4_activation_set_view2 WHERE corp_id IN (SELECT corp_id FROM cv)\n"
+					+ "		AND date_entered >= DATEADD('DAY', -180, CURRENT_TIMESTAMP)\n		ORDER BY date_entered ";
+			String page = "\n		OFFSET :offset ROWS FETCH FIRST :limit ROWS ONLY";
+			ascStatements.put(Query.RECENT_TRANSACTIONS, recent + ASC + page);
+			descStatements.put(Query.RECENT_TRANSACTIONS, recent + DESC + page);
+			statements.put(Query.RECENT_HISTORY_COUNT, CORP_HIERARCHY
+					+ "SELECT COUNT(*) FROM kj4_activation_set_view2 WHERE corp_id IN (SELECT corp_id FROM cv)\n"
+					+ "		AND date_entered >= DATEADD('DAY', -180, CURRENT_TIMESTAMP)");
+			statements.put(Query.TRANSACTION_DETAILS, CORP_HIERARCHY
+					+ "SELECT act.set_transaction_id, act.device_group, cv.corp_description, act.service_zip_code, act.filter_group,\n"
+					+ "		act.carrier, " + String.format(TIMESTAMP_FORMAT, "asv.date_entered") + ", act.imei, act.iccid, act.derived_status,\n"
+					+ "		act.mdn, act.ip, NVL(act.nickname, 'N/A')\n"
+					+ "		FROM kj4_activation_set_details act\n"
+					+ "		JOIN cv ON act.device_group = cv.corp_id\n"
+					+ "		JOIN kj4_activation_set_view2 asv ON asv.set_transaction_id = act.set_transaction_id\n"
+					+ "		WHERE act.set_transaction_id = :transactionId");
+		}
+
+		@Override
+		String get(Query query) {
+			String sql = statements.get(query);
+			return sql != null ? sql : super.get(query);
+		}
+
+		@Override
+		String get(Query query, String sortDir) {
+			Map<Query, String> variants = ASC.equalsIgnoreCase(sortDir) ? ascStatements : descStatements;
+			String sql = variants.get(query);
+			return sql != null ? sql : super.get(query, sortDir);
+		}
+	}
+}
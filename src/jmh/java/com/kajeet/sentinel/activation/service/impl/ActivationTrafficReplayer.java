@@ -0,0 +1,200 @@
+package com.kajeet.sentinel.activation.service.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Replays a file written by {@link ActivationTrafficRecorder} against a running deployment, keeping the
+ * captured inter-arrival times divided by replay.speed (0 replays as fast as the threads allow). Submissions
+ * are POSTed with the captured payload as the body; history reads are sent as GETs with the captured
+ * parameters as the query string. Each captured type is sent to the path configured as replay.path.TYPE, and
+ * types without a path are skipped. Requests are replayed as the captured corp: {corpId} in a path is replaced
+ * with it, and the Authorization header is taken from replay.authHeader.CORPID, falling back to
+ * replay.authHeader. Reports per-type counts, failures, latency percentiles and how far dispatch fell behind
+ * schedule.
+ *
+ * Example: -Dreplay.file=activation-capture.jsonl.gz -Dreplay.baseUrl=http://localhost:8080 -Dreplay.speed=2
+ * -Dreplay.authHeader.12345="Bearer ..." -Dreplay.path.SUBMIT=/... -Dreplay.path.RECENT_TRANSACTIONS=/.../{corpId}
+ */
+public final class ActivationTrafficReplayer {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final String file = required("replay.file");
+	private final String baseUrl = required("replay.baseUrl");
+	private final double speed = Double.parseDouble(System.getProperty("replay.speed", "1"));
+	private final int threads = Integer.getInteger("replay.threads", 32);
+	private final String authHeader = System.getProperty("replay.authHeader");
+
+	private final Map<String, TypeStats> stats = new ConcurrentHashMap<>();
+	private final LongAdder skipped = new LongAdder();
+	private final AtomicLong maxLagNanos = new AtomicLong();
+
+	public static void main(String[] args) throws Exception {
+		new ActivationTrafficReplayer().run();
+	}
+
+	private void run() throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		long replayStarted = System.nanoTime();
+		long firstCapturedAt = -1;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(Files.newInputStream(Paths.get(file))), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				JsonNode record = mapper.readTree(line);
+				String type = record.path("type").asText();
+				String path = System.getProperty("replay.path." + type);
+				if (path == null) {
+					skipped.increment();
+					continue;
+				}
+				long capturedAt = record.path("t").asLong();
+				if (firstCapturedAt < 0) {
+					firstCapturedAt = capturedAt;
+				}
+				long dueNanos = replayStarted + (speed <= 0 ? 0
+						: (long) (TimeUnit.MILLISECONDS.toNanos(capturedAt - firstCapturedAt) / speed));
+				long waitNanos = dueNanos - System.nanoTime();
+				if (waitNanos > 0) {
+					TimeUnit.NANOSECONDS.sleep(waitNanos);
+				}
+				String corpId = record.path("corpId").asText(null);
+				executor.execute(() -> send(type, corpId, path, record.path("payload"), dueNanos));
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.HOURS);
+		}
+		report(System.nanoTime() - replayStarted);
+	}
+
+	private void send(String type, String corpId, String path, JsonNode payload, long dueNanos) {
+		long started = System.nanoTime();
+		if (speed > 0) {
+			maxLagNanos.accumulateAndGet(started - dueNanos, Math::max);
+		}
+		TypeStats typeStats = stats.computeIfAbsent(type, key -> new TypeStats());
+		boolean submission = type.endsWith("SUBMIT");
+		HttpURLConnection connection = null;
+		try {
+			String corpPath = corpId == null ? path : path.replace("{corpId}", URLEncoder.encode(corpId, "UTF-8"));
+			connection = (HttpURLConnection) new URL(baseUrl + corpPath + (submission ? "" : queryString(payload))).openConnection();
+			connection.setRequestMethod(submission ? "POST" : "GET");
+			connection.setRequestProperty("Accept", "application/json");
+			String authHeader = corpId == null ? this.authHeader : System.getProperty("replay.authHeader." + corpId, this.authHeader);
+			if (authHeader != null) {
+				connection.setRequestProperty("Authorization", authHeader);
+			}
+			if (submission) {
+				connection.setDoOutput(true);
+				connection.setRequestProperty("Content-Type", "application/json");
+				try (OutputStream out = connection.getOutputStream()) {
+					mapper.writeValue(out, payload);
+				}
+			}
+			int status = connection.getResponseCode();
+			try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+				if (in != null) {
+					while (in.read() >= 0) {
+						// drain so the connection can be reused
+					}
+				}
+			}
+			typeStats.record(System.nanoTime() - started, status < 400);
+		} catch (IOException e) {
+			typeStats.record(System.nanoTime() - started, false);
+		} finally {
+			if (connection != null) {
+				connection.disconnect();
+			}
+		}
+	}
+
+	private String queryString(JsonNode payload) throws IOException {
+		StringBuilder query = new StringBuilder();
+		Iterator<Map.Entry<String, JsonNode>> fields = payload.fields();
+		while (fields.hasNext()) {
+			Map.Entry<String, JsonNode> field = fields.next();
+			if (field.getValue().isNull()) {
+				continue;
+			}
+			query.append(query.length() == 0 ? '?' : '&').append(URLEncoder.encode(field.getKey(), "UTF-8")).append('=')
+					.append(URLEncoder.encode(field.getValue().asText(), "UTF-8"));
+		}
+		return query.toString();
+	}
+
+	private void report(long elapsedNanos) {
+		double seconds = elapsedNanos / 1e9;
+		System.out.printf("Replayed %s in %.1f s at speed %s, %d records skipped (no replay.path), max dispatch lag %.1f ms%n",
+				file, seconds, speed <= 0 ? "max" : String.valueOf(speed), skipped.sum(), maxLagNanos.get() / 1e6);
+		System.out.printf("%-22s %8s %8s %8s %8s %8s %8s %8s%n", "type", "count", "req/s", "failed", "p50 ms", "p90 ms",
+				"p99 ms", "max ms");
+		for (Map.Entry<String, TypeStats> entry : new TreeMap<>(stats).entrySet()) {
+			List<Long> latencies = entry.getValue().sortedLatencies();
+			System.out.printf("%-22s %8d %8.1f %8d %8.1f %8.1f %8.1f %8.1f%n", entry.getKey(), latencies.size(),
+					latencies.size() / seconds, entry.getValue().failed.sum(), millis(latencies, 0.50),
+					millis(latencies, 0.90), millis(latencies, 0.99), millis(latencies, 1.0));
+		}
+	}
+
+	private static double millis(List<Long> sorted, double percentile) {
+		if (sorted.isEmpty()) {
+			return 0;
+		}
+		int index = (int) Math.min(sorted.size() - 1, Math.ceil(percentile * sorted.size()) - 1);
+		return sorted.get(Math.max(0, index)) / 1e6;
+	}
+
+	private static String required(String property) {
+		String value = System.getProperty(property);
+		if (value == null) {
+			throw new IllegalArgumentException("Missing -D" + property);
+		}
+		return value;
+	}
+
+	private static final class TypeStats {
+
+		private final List<Long> latencies = new ArrayList<>();
+		private final LongAdder failed = new LongAdder();
+
+		synchronized void record(long latencyNanos, boolean success) {
+			latencies.add(latencyNanos);
+			if (!success) {
+				failed.increment();
+			}
+		}
+
+		synchronized List<Long> sortedLatencies() {
+			List<Long> sorted = new ArrayList<>(latencies);
+			Collections.sort(sorted);
+			return sorted;
+		}
+	}
+}